@@ -0,0 +1,151 @@
+/* Compressed sparse row adjacency of a single graph, indexed by dense vertex positions.
+ *
+ * The neighbors of vertex i are targets[offsets[i]] ... targets[offsets[i+1]-1], with matching weights. Every
+ * undirected edge is stored once in each direction.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+public class CSRGraph {
+	private int numVertices;
+	private int[] offsets;
+	private int[] targets;
+	private double[] weights;
+
+	public CSRGraph(int[] offsets, int[] targets, double[] weights)
+	{
+		this.offsets=offsets;
+		this.targets=targets;
+		this.weights=weights;
+		numVertices=offsets.length-1;
+	}
+
+	// Builds the adjacency of G, where vertex i is order.get(i). Edges touching vertices outside order are skipped.
+	// When order is in VertexDictionary order the interned indices are used directly.
+	public static CSRGraph fromGraph(Graph G, ArrayList<Vertice> order)
+	{
+		HashMap<Vertice, Integer> index = null;
+		if(!VertexDictionary.isIndexed(order))
+		{
+			index = new HashMap<>();
+			for(int i=0; i<order.size(); i++)
+				index.put(order.get(i), i);
+		}
+		ArrayList<Edge> edges = G.getEdges();
+		int[] source = new int[edges.size()];
+		int[] target = new int[edges.size()];
+		int[] offsets = new int[order.size()+1];
+		Integer x;
+		Integer y;
+		for(int e=0; e<edges.size(); e++)
+		{
+			x = getPosition(edges.get(e).getSource(), index, order.size());
+			y = getPosition(edges.get(e).getTarget(), index, order.size());
+			if(x==null||y==null)
+			{
+				source[e]=-1;
+				continue;
+			}
+			source[e]=x;
+			target[e]=y;
+			offsets[x+1]++;
+			offsets[y+1]++;
+		}
+		for(int i=0; i<order.size(); i++)
+			offsets[i+1]+=offsets[i];
+		int[] fill = new int[order.size()];
+		int[] targets = new int[offsets[order.size()]];
+		double[] weights = new double[targets.length];
+		int pos;
+		for(int e=0; e<edges.size(); e++)
+		{
+			if(source[e]<0)
+				continue;
+			pos = offsets[source[e]]+fill[source[e]]++;
+			targets[pos]=target[e];
+			weights[pos]=edges.get(e).getWeight();
+			pos = offsets[target[e]]+fill[target[e]]++;
+			targets[pos]=source[e];
+			weights[pos]=edges.get(e).getWeight();
+		}
+		return new CSRGraph(offsets, targets, weights);
+	}
+
+	// Adjacency of the union of layers, with the weights of an edge present in several layers summed into one entry
+	public static CSRGraph sumLayers(Graph[] layers, ArrayList<Vertice> order)
+	{
+		if(layers.length==1)
+			return fromGraph(layers[0], order);
+		ArrayList<Edge> edges = new ArrayList<>();
+		for(Graph G: layers)
+			edges.addAll(G.getEdges());
+		CSRGraph all = fromGraph(new Graph(order, edges, 0), order);
+		int n = all.getNumVertices();
+		int[] offsets = new int[n+1];
+		int[] targets = new int[all.targets.length];
+		double[] weights = new double[all.targets.length];
+		long[] row = new long[0];
+		int degree;
+		int pos=0;
+		for(int v=0; v<n; v++)
+		{
+			degree=all.getDegree(v);
+			if(row.length<degree)
+				row = new long[degree];
+			// sort the row by target, carrying the arc position along in the low bits
+			for(int a=0; a<degree; a++)
+				row[a]=((long)all.targets[all.offsets[v]+a]<<32)|a;
+			Arrays.sort(row, 0, degree);
+			for(int a=0; a<degree; a++)
+			{
+				if(a==0||(row[a]>>>32)!=(row[a-1]>>>32))
+					targets[pos++]=(int)(row[a]>>>32);
+				weights[pos-1]+=all.weights[all.offsets[v]+(int)row[a]];
+			}
+			offsets[v+1]=pos;
+		}
+		return new CSRGraph(offsets, Arrays.copyOf(targets, pos), Arrays.copyOf(weights, pos));
+	}
+
+	private static Integer getPosition(Vertice v, HashMap<Vertice, Integer> index, int numVertices)
+	{
+		if(index!=null)
+			return index.get(v);
+		return v.getIndex()>=0&&v.getIndex()<numVertices ? v.getIndex() : null;
+	}
+
+	public int getNumVertices()
+	{
+		return numVertices;
+	}
+	// number of stored (directed) entries, twice the number of undirected edges
+	public int getNumArcs()
+	{
+		return offsets[numVertices];
+	}
+	public int getDegree(int v)
+	{
+		return offsets[v+1]-offsets[v];
+	}
+	public double getWeightedDegree(int v)
+	{
+		double result=0;
+		for(int i=offsets[v]; i<offsets[v+1]; i++)
+			result+=weights[i];
+		return result;
+	}
+	public int[] getOffsets()
+	{
+		return offsets;
+	}
+	public int[] getTargets()
+	{
+		return targets;
+	}
+	public double[] getWeights()
+	{
+		return weights;
+	}
+}
@@ -0,0 +1,489 @@
+/* Vertex centralities computed from the contact graph, in the order of the centralities list read from Node Properties.txt:
+ * betweenness, closeness, degree and community clustering coefficient (CCC).
+ *
+ * Betweenness uses Brandes' algorithm, with a BFS per source on the unweighted graph or a Dijkstra search (edge length
+ * 1/weight, as in ShortestPaths) on the weighted one. Closeness comes out of the same searches. Sources are split into a
+ * fixed number of blocks that run in parallel, each adding into its own array, and the blocks are summed in order, so the
+ * values do not depend on the number of threads.
+ *
+ * Values are normalized like the Cytoscape NetworkAnalyzer export: betweenness by (N-1)(N-2)/2 and closeness as the inverse
+ * of the mean distance, where N is the size of the vertex's connected component. Unweighted, they reproduce the columns of
+ * Node Properties.txt.
+ *
+ * Exact betweenness needs a search from every vertex. For large graphs approximateBetweenness samples shortest paths between
+ * random pairs of vertices instead (Riondato and Kornaropoulos), with a number of samples that depends on the accuracy asked
+ * for and the vertex diameter, not on the size of the graph. approximateCloseness likewise only searches from a sample of
+ * pivots (Eppstein and Wang), whose number grows with the logarithm of the size of the graph.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+public class Centrality {
+	static final int betweennessIndex=0;
+	static final int closenessIndex=1;
+	static final int degreeIndex=2;
+	static final int clusteringIndex=3;
+	static final int numBlocks=32;
+
+	// Buffers of one search from a single source
+	static class Search
+	{
+		private boolean weighted;
+		private ShortestPaths dijkstra;
+		private double[] dist;
+		private double[] sigma;
+		private double[] delta;
+		private int[] order;
+		private int reached;
+
+		Search(int numVertices, boolean weighted)
+		{
+			this.weighted=weighted;
+			if(weighted)
+				dijkstra = new ShortestPaths(numVertices);
+			dist = new double[numVertices];
+			sigma = new double[numVertices];
+			delta = new double[numVertices];
+			order = new int[numVertices];
+		}
+
+		// Shortest paths from source, stopping once target is settled (-1 for never)
+		void search(CSRGraph graph, int source, int target)
+		{
+			if(weighted)
+				reached=dijkstra.countPaths(graph, source, target, dist, sigma, order);
+			else
+				bfs(graph, source, target);
+		}
+
+		// Shortest paths from source, then adds each vertex's dependency on source times scale to betweenness
+		void run(CSRGraph graph, int source, double[] betweenness, double scale)
+		{
+			search(graph, source, -1);
+			int[] offsets = graph.getOffsets();
+			int[] targets = graph.getTargets();
+			double[] weights = graph.getWeights();
+			int w;
+			int v;
+			for(int i=0; i<reached; i++)
+				delta[order[i]]=0;
+			for(int i=reached-1; i>0; i--)
+			{
+				w=order[i];
+				for(int a=offsets[w]; a<offsets[w+1]; a++)
+				{
+					v=targets[a];
+					if(weighted ? dist[v]+1/weights[a]==dist[w] : dist[v]==dist[w]-1)
+						delta[v]+=sigma[v]/sigma[w]*(1+delta[w]);
+				}
+				betweenness[w]+=delta[w]*scale;
+			}
+		}
+
+		// Adds scale to every inner vertex of one shortest path from source to target, chosen uniformly among all of them
+		void samplePath(CSRGraph graph, int source, int target, SplittableRandom random, double[] betweenness, double scale)
+		{
+			search(graph, source, target);
+			if(dist[target]==Double.POSITIVE_INFINITY)
+				return;
+			int[] offsets = graph.getOffsets();
+			int[] targets = graph.getTargets();
+			double[] weights = graph.getWeights();
+			int w=target;
+			int v;
+			int previous;
+			double x;
+			while(true)
+			{
+				// predecessor p is chosen with probability sigma[p]/sigma[w]
+				x=random.nextDouble()*sigma[w];
+				previous=-1;
+				for(int a=offsets[w]; a<offsets[w+1]; a++)
+				{
+					v=targets[a];
+					if(weighted ? dist[v]+1/weights[a]==dist[w] : dist[v]==dist[w]-1)
+					{
+						previous=v;
+						x-=sigma[v];
+						if(x<0)
+							break;
+					}
+				}
+				if(previous==source)
+					return;
+				betweenness[previous]+=scale;
+				w=previous;
+			}
+		}
+
+		private void bfs(CSRGraph graph, int source, int target)
+		{
+			int[] offsets = graph.getOffsets();
+			int[] targets = graph.getTargets();
+			for(int i=0; i<reached; i++)
+			{
+				dist[order[i]]=Double.POSITIVE_INFINITY;
+				sigma[order[i]]=0;
+			}
+			if(reached==0)
+			{
+				Arrays.fill(dist, Double.POSITIVE_INFINITY);
+				Arrays.fill(sigma, 0);
+			}
+			dist[source]=0;
+			sigma[source]=1;
+			order[0]=source;
+			reached=1;
+			int v;
+			int t;
+			for(int head=0; head<reached; head++)
+			{
+				v=order[head];
+				// every path to target is counted once the level before it is done
+				if(target>=0&&dist[v]>=dist[target])
+					break;
+				for(int a=offsets[v]; a<offsets[v+1]; a++)
+				{
+					t=targets[a];
+					if(dist[t]==Double.POSITIVE_INFINITY)
+					{
+						dist[t]=dist[v]+1;
+						order[reached++]=t;
+					}
+					if(dist[t]==dist[v]+1)
+						sigma[t]+=sigma[v];
+				}
+			}
+		}
+
+		// Inverse of the mean distance from the last source to the other vertices it reached, 0 if it reached none
+		double getCloseness()
+		{
+			double total=0;
+			for(int i=1; i<reached; i++)
+				total+=dist[order[i]];
+			return reached>1 ? (reached-1)/total : 0;
+		}
+	}
+
+	/*	Computes all four centralities of graph.
+	 * 	weighted: if true paths are measured with edge length 1/weight, else every edge has length 1
+	 * 	community: community of each vertex, for the clustering coefficient
+	 * 	epsilon, delta, seed: see approximateBetweenness and approximateCloseness. epsilon<=0 computes both exactly.
+	 * 	Returns result[index][v] with index as the constants above.
+	 */
+	public static double[][] compute(CSRGraph graph, boolean weighted, int[] community, double epsilon, double delta, long seed)
+	{
+		int n = graph.getNumVertices();
+		double[][] result = new double[4][];
+		if(epsilon>0)
+		{
+			SplittableRandom root = new SplittableRandom(seed);
+			result[betweennessIndex]=approximateBetweenness(graph, weighted, epsilon, delta, root.nextLong());
+			result[closenessIndex]=approximateCloseness(graph, weighted, epsilon, delta, root.nextLong());
+		}
+		else
+		{
+			result[closenessIndex] = new double[n];
+			result[betweennessIndex]=betweenness(graph, weighted, IntStream.range(0, n).toArray(), 1, result[closenessIndex]);
+		}
+		result[degreeIndex] = new double[n];
+		for(int v=0; v<n; v++)
+			result[degreeIndex][v]=graph.getDegree(v);
+		result[clusteringIndex]=clustering(graph, community);
+		return result;
+	}
+
+	/*	Sums the dependencies of every vertex on the given sources, times scale, and normalizes by component size.
+	 * 	closeness: if not null, filled with the closeness of each source
+	 */
+	static double[] betweenness(CSRGraph graph, boolean weighted, int[] sources, double scale, double[] closeness)
+	{
+		int n = graph.getNumVertices();
+		double[][] blocks = new double[Math.min(numBlocks, Math.max(1, sources.length))][];
+		IntStream.range(0, blocks.length).parallel().forEach(b -> {
+			Search search = new Search(n, weighted);
+			double[] sum = new double[n];
+			for(int i=(int)((long)b*sources.length/blocks.length); i<(int)((long)(b+1)*sources.length/blocks.length); i++)
+			{
+				search.run(graph, sources[i], sum, scale);
+				if(closeness!=null)
+					closeness[sources[i]]=search.getCloseness();
+			}
+			blocks[b]=sum;
+		});
+		double[] result = blocks[0];
+		for(int b=1; b<blocks.length; b++)
+			for(int v=0; v<n; v++)
+				result[v]+=blocks[b][v];
+		int[] componentSize = getComponentSizes(graph);
+		double pairs;
+		for(int v=0; v<n; v++)
+		{
+			// every pair is counted from both ends, hence (N-1)(N-2) rather than (N-1)(N-2)/2
+			pairs=(double)(componentSize[v]-1)*(componentSize[v]-2);
+			result[v] = pairs>0 ? result[v]/pairs : 0;
+		}
+		return result;
+	}
+
+	/*	Betweenness estimated from random shortest paths. With probability at least 1-delta every estimate is within epsilon
+	 * 	of the exact value, as a fraction of all vertex pairs (for a connected graph this is the normalization above up to a
+	 * 	factor n/(n-2)), so vertices whose betweenness differs by more than 2*epsilon are ranked correctly.
+	 * 	If that takes as many samples as there are vertices the exact value is computed instead.
+	 * 	seed: samples are drawn in fixed blocks, each with a generator split from it in order, so the result does not depend on the number of threads
+	 */
+	public static double[] approximateBetweenness(CSRGraph graph, boolean weighted, double epsilon, double delta, long seed)
+	{
+		int n = graph.getNumVertices();
+		int samples = getSampleSize(graph, epsilon, delta, weighted);
+		if(n<3||samples>=n)
+			return betweenness(graph, weighted, IntStream.range(0, n).toArray(), 1, null);
+		double[][] blocks = new double[Math.min(numBlocks, samples)][];
+		SplittableRandom[] randoms = new SplittableRandom[blocks.length];
+		SplittableRandom root = new SplittableRandom(seed);
+		for(int b=0; b<blocks.length; b++)
+			randoms[b]=root.split();
+		IntStream.range(0, blocks.length).parallel().forEach(b -> {
+			Search search = new Search(n, weighted);
+			SplittableRandom random = randoms[b];
+			double[] sum = new double[n];
+			int source;
+			int target;
+			for(int i=(int)((long)b*samples/blocks.length); i<(int)((long)(b+1)*samples/blocks.length); i++)
+			{
+				source=random.nextInt(n);
+				target=random.nextInt(n-1);
+				if(target>=source)
+					target++;
+				search.samplePath(graph, source, target, random, sum, 1.0/samples);
+			}
+			blocks[b]=sum;
+		});
+		double[] result = blocks[0];
+		for(int b=1; b<blocks.length; b++)
+			for(int v=0; v<n; v++)
+				result[v]+=blocks[b][v];
+		// from a fraction of the n(n-1) ordered pairs to the per component normalization of betweenness
+		int[] componentSize = getComponentSizes(graph);
+		double pairs;
+		for(int v=0; v<n; v++)
+		{
+			pairs=(double)(componentSize[v]-1)*(componentSize[v]-2);
+			result[v] = pairs>0 ? result[v]*n*(n-1)/pairs : 0;
+		}
+		return result;
+	}
+
+	/*	Closeness estimated from a sample of pivots: the mean distance from a vertex to the rest of its component is taken
+	 * 	over k=ln(2n/delta)/(2 epsilon^2) random pivots of the component, so with probability at least 1-delta every mean
+	 * 	distance is within epsilon times the component's diameter. Components of at most k vertices use all of them as
+	 * 	pivots, which gives the exact value.
+	 * 	seed: as approximateBetweenness
+	 */
+	public static double[] approximateCloseness(CSRGraph graph, boolean weighted, double epsilon, double delta, long seed)
+	{
+		int n = graph.getNumVertices();
+		int k = (int)Math.min(Integer.MAX_VALUE, Math.ceil(Math.log(2.0*n/delta)/(2*epsilon*epsilon)));
+		int[] component = getComponents(graph);
+		int numComponents=0;
+		for(int v=0; v<n; v++)
+			numComponents=Math.max(numComponents, component[v]+1);
+		int[][] members = new int[numComponents][];
+		int[] size = new int[numComponents];
+		for(int v=0; v<n; v++)
+			size[component[v]]++;
+		for(int c=0; c<numComponents; c++)
+			members[c] = new int[size[c]];
+		Arrays.fill(size, 0);
+		for(int v=0; v<n; v++)
+			members[component[v]][size[component[v]]++]=v;
+
+		// the first min(k, size) members of each component after a partial shuffle
+		SplittableRandom random = new SplittableRandom(seed);
+		int[] numPivots = new int[numComponents];
+		int[] pivots = new int[n];
+		int numSources=0;
+		int swap;
+		int j;
+		for(int c=0; c<numComponents; c++)
+		{
+			numPivots[c]=Math.min(k, size[c]);
+			for(int i=0; i<numPivots[c]; i++)
+			{
+				if(numPivots[c]<size[c])
+				{
+					j=i+random.nextInt(size[c]-i);
+					swap=members[c][i];
+					members[c][i]=members[c][j];
+					members[c][j]=swap;
+				}
+				pivots[numSources++]=members[c][i];
+			}
+		}
+		boolean[] isPivot = new boolean[n];
+		for(int i=0; i<numSources; i++)
+			isPivot[pivots[i]]=true;
+
+		final int sources = numSources;
+		double[][] blocks = new double[Math.min(numBlocks, Math.max(1, sources))][];
+		IntStream.range(0, blocks.length).parallel().forEach(b -> {
+			Search search = new Search(n, weighted);
+			double[] sum = new double[n];
+			for(int i=(int)((long)b*sources/blocks.length); i<(int)((long)(b+1)*sources/blocks.length); i++)
+			{
+				search.search(graph, pivots[i], -1);
+				for(int r=1; r<search.reached; r++)
+					sum[search.order[r]]+=search.dist[search.order[r]];
+			}
+			blocks[b]=sum;
+		});
+		double[] result = blocks[0];
+		for(int b=1; b<blocks.length; b++)
+			for(int v=0; v<n; v++)
+				result[v]+=blocks[b][v];
+		int count;
+		for(int v=0; v<n; v++)
+		{
+			// distances to the pivots other than v itself
+			count=numPivots[component[v]]-(isPivot[v] ? 1 : 0);
+			result[v] = count>0&&result[v]>0 ? count/result[v] : 0;
+		}
+		return result;
+	}
+
+	/*	Number of path samples for an (epsilon, delta) guarantee: (0.5/epsilon^2)(floor(log2(VD-2))+1+ln(1/delta)), where
+	 * 	VD bounds the number of vertices on a shortest path. Unweighted, a BFS from one vertex of each component gives
+	 * 	VD <= 2*eccentricity+1. Weighted shortest paths can take more hops, so the component size is used.
+	 */
+	static int getSampleSize(CSRGraph graph, double epsilon, double delta, boolean weighted)
+	{
+		int n = graph.getNumVertices();
+		Search search = new Search(n, false);
+		boolean[] seen = new boolean[n];
+		int diameter=2;
+		for(int s=0; s<n; s++)
+		{
+			if(seen[s])
+				continue;
+			search.bfs(graph, s, -1);
+			for(int i=0; i<search.reached; i++)
+				seen[search.order[i]]=true;
+			if(weighted)
+				diameter=Math.max(diameter, search.reached);
+			else
+				diameter=Math.max(diameter, (int)Math.min(search.reached, 2*search.dist[search.order[search.reached-1]]+1));
+		}
+		double log2 = diameter>3 ? Math.floor(Math.log(diameter-2)/Math.log(2)) : 0;
+		return (int)Math.min(Integer.MAX_VALUE, Math.ceil(0.5/(epsilon*epsilon)*(log2+1+Math.log(1/delta))));
+	}
+
+	// Size of the connected component of each vertex
+	static int[] getComponentSizes(CSRGraph graph)
+	{
+		int n = graph.getNumVertices();
+		int[] component = getComponents(graph);
+		int[] sizes = new int[n];
+		for(int v=0; v<n; v++)
+			sizes[component[v]]++;
+		int[] result = new int[n];
+		for(int i=0; i<n; i++)
+			result[i]=sizes[component[i]];
+		return result;
+	}
+	// Connected component of each vertex, numbered in the order of their first vertex
+	static int[] getComponents(CSRGraph graph)
+	{
+		int n = graph.getNumVertices();
+		int[] offsets = graph.getOffsets();
+		int[] targets = graph.getTargets();
+		int[] component = new int[n];
+		Arrays.fill(component, -1);
+		int[] queue = new int[n];
+		int numComponents=0;
+		int tail;
+		int v;
+		for(int s=0; s<n; s++)
+		{
+			if(component[s]>=0)
+				continue;
+			component[s]=numComponents++;
+			queue[0]=s;
+			tail=1;
+			for(int head=0; head<tail; head++)
+			{
+				v=queue[head];
+				for(int a=offsets[v]; a<offsets[v+1]; a++)
+				{
+					if(component[targets[a]]<0)
+					{
+						component[targets[a]]=component[s];
+						queue[tail++]=targets[a];
+					}
+				}
+			}
+		}
+		return component;
+	}
+
+	/*	Local clustering coefficient: fraction of pairs of distinct neighbors that are adjacent, 0 below two neighbors.
+	 * 	community: if not null, only neighbors in the vertex's own community count (CCC)
+	 */
+	public static double[] clustering(CSRGraph graph, int[] community)
+	{
+		int n = graph.getNumVertices();
+		int[] offsets = graph.getOffsets();
+		int[] targets = graph.getTargets();
+		double[] result = new double[n];
+		ThreadLocal<int[]> marks = ThreadLocal.withInitial(() -> new int[n]);
+		IntStream.range(0, n).parallel().forEach(v -> {
+			int[] mark = marks.get();
+			int degree=0;
+			for(int a=offsets[v]; a<offsets[v+1]; a++)
+			{
+				if(targets[a]!=v&&mark[targets[a]]!=v+1&&(community==null||community[targets[a]]==community[v]))
+				{
+					mark[targets[a]]=v+1;
+					degree++;
+				}
+			}
+			if(degree<2)
+				return;
+			long links=0;
+			int u;
+			for(int a=offsets[v]; a<offsets[v+1]; a++)
+			{
+				u=targets[a];
+				if(u==v||mark[u]!=v+1)
+					continue;
+				mark[u]=-(v+1); //each neighbor once
+				for(int b=offsets[u]; b<offsets[u+1]; b++)
+					if(Math.abs(mark[targets[b]])==v+1&&targets[b]!=u)
+						links++;
+			}
+			result[v]=(double)links/((long)degree*(degree-1));
+		});
+		return result;
+	}
+
+	/*	Replaces the centralities of vertices with values computed from the sum of layers, in the order of Node Properties.txt.
+	 * 	Vertices must carry their community in getCommID().
+	 * 	weighted, epsilon, delta, seed: see compute
+	 */
+	public static void setCentralities(ArrayList<Vertice> vertices, Graph[] layers, boolean weighted, double epsilon, double delta, long seed)
+	{
+		int[] community = new int[vertices.size()];
+		for(int i=0; i<vertices.size(); i++)
+			community[i]=vertices.get(i).getCommID();
+		double[][] values = compute(CSRGraph.sumLayers(layers, vertices), weighted, community, epsilon, delta, seed);
+		for(int i=0; i<vertices.size(); i++)
+		{
+			vertices.get(i).centralities.clear();
+			for(int c=0; c<values.length; c++)
+				vertices.get(i).centralities.add(values[c][i]);
+		}
+	}
+}
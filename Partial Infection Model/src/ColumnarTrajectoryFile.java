@@ -0,0 +1,191 @@
+/* TrajectorySink that streams per-vertex trajectories to a binary columnar file through a buffered FileChannel.
+ *
+ * Days are grouped into chunks. Within a chunk values are stored column-wise (all days of vertex 0, then vertex 1, ...),
+ * so reading one vertex's history touches one contiguous run per chunk. Values are stored either as float32 or
+ * quantized to 16 bits over [0, 1]. A new chunk is started whenever the day counter does not continue the previous day,
+ * i.e. at the start of every new run.
+ *
+ * Layout (big-endian):
+ * 	header: magic, version, numVertices, quantized (0/1)
+ * 	per chunk: firstDay, numDays, then numVertices*numDays values
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+
+public class ColumnarTrajectoryFile implements TrajectorySink {
+	static final int magic=0x50494D54; //"PIMT"
+	static final int version=1;
+	static final int headerSize=16;
+	static final int quantizationLevels=65535;
+
+	private FileChannel channel;
+	private ByteBuffer out;
+	private int numVertices;
+	private boolean quantized;
+	private int daysPerChunk;
+
+	private float[] chunk; //chunk[vertex*daysPerChunk+d]
+	private int firstDay;
+	private int numDays;
+
+	/*	Input:
+	 * 	file: destination, overwritten if it exists
+	 * 	numVertices: number of vertices passed to record on every call
+	 * 	quantized: store 16 bit values instead of float32
+	 * 	daysPerChunk: days buffered in memory before a chunk is written
+	 */
+	public ColumnarTrajectoryFile(File file, int numVertices, boolean quantized, int daysPerChunk) throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		raf.setLength(0);
+		channel = raf.getChannel();
+		this.numVertices=numVertices;
+		this.quantized=quantized;
+		this.daysPerChunk=daysPerChunk;
+		chunk = new float[numVertices*daysPerChunk];
+		out = ByteBuffer.allocateDirect(1<<16);
+		numDays=0;
+		out.putInt(magic);
+		out.putInt(version);
+		out.putInt(numVertices);
+		out.putInt(quantized ? 1 : 0);
+	}
+
+	@Override
+	public void record(int day, ArrayList<Vertice> vertices)
+	{
+		if(numDays>0&&(day!=firstDay+numDays||numDays==daysPerChunk))
+			flushChunk();
+		if(numDays==0)
+			firstDay=day;
+		for(int i=0; i<numVertices; i++)
+			chunk[i*daysPerChunk+numDays]=(float)vertices.get(i).getCumulation();
+		numDays++;
+	}
+
+	private void flushChunk()
+	{
+		try
+		{
+			ensureRoom(8);
+			out.putInt(firstDay);
+			out.putInt(numDays);
+			for(int i=0; i<numVertices; i++)
+			{
+				for(int d=0; d<numDays; d++)
+				{
+					ensureRoom(4);
+					if(quantized)
+						out.putShort(quantize(chunk[i*daysPerChunk+d]));
+					else
+						out.putFloat(chunk[i*daysPerChunk+d]);
+				}
+			}
+			numDays=0;
+		}
+		catch(IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+	}
+	private void ensureRoom(int bytes) throws IOException
+	{
+		if(out.remaining()<bytes)
+			drain();
+	}
+	private void drain() throws IOException
+	{
+		out.flip();
+		while(out.hasRemaining())
+			channel.write(out);
+		out.clear();
+	}
+
+	static short quantize(float value)
+	{
+		if(value<=0)
+			return 0;
+		if(value>=1)
+			return (short)quantizationLevels;
+		return (short)Math.round(value*quantizationLevels);
+	}
+	static float dequantize(short value)
+	{
+		return (value&0xFFFF)/(float)quantizationLevels;
+	}
+
+	@Override
+	public void close()
+	{
+		try
+		{
+			if(numDays>0)
+				flushChunk();
+			drain();
+			channel.close();
+		}
+		catch(IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	// Reads every recorded value of one vertex, in file order. Runs follow each other in the result.
+	public static float[] readVertex(File file, int vertex) throws IOException
+	{
+		try(RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel in = raf.getChannel())
+		{
+			ByteBuffer header = ByteBuffer.allocate(headerSize);
+			readFully(in, header, 0);
+			if(header.getInt(0)!=magic||header.getInt(4)!=version)
+				throw new IOException(file+" is not a trajectory file");
+			int n = header.getInt(8);
+			int width = header.getInt(12)==1 ? 2 : 4;
+			if(vertex<0||vertex>=n)
+				throw new IllegalArgumentException("No vertex "+vertex+" in "+file);
+
+			ArrayList<float[]> parts = new ArrayList<>();
+			int total=0;
+			long pos=headerSize;
+			ByteBuffer chunkHeader = ByteBuffer.allocate(8);
+			while(pos<in.size())
+			{
+				chunkHeader.clear();
+				readFully(in, chunkHeader, pos);
+				int days = chunkHeader.getInt(4);
+				ByteBuffer values = ByteBuffer.allocate(days*width);
+				readFully(in, values, pos+8+(long)vertex*days*width);
+				float[] part = new float[days];
+				for(int d=0; d<days; d++)
+					part[d] = width==2 ? dequantize(values.getShort(d*2)) : values.getFloat(d*4);
+				parts.add(part);
+				total+=days;
+				pos+=8+(long)n*days*width;
+			}
+			float[] result = new float[total];
+			int offset=0;
+			for(float[] part: parts)
+			{
+				System.arraycopy(part, 0, result, offset, part.length);
+				offset+=part.length;
+			}
+			return result;
+		}
+	}
+	private static void readFully(FileChannel in, ByteBuffer buffer, long pos) throws IOException
+	{
+		while(buffer.hasRemaining())
+		{
+			int read = in.read(buffer, pos);
+			if(read<0)
+				throw new IOException("Unexpected end of trajectory file");
+			pos+=read;
+		}
+	}
+}
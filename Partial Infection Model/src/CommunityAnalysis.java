@@ -4,13 +4,13 @@
  */
 
 
-import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
-import java.util.Scanner;
+import java.util.stream.IntStream;
 
 public class CommunityAnalysis {
 
@@ -18,89 +18,35 @@ public class CommunityAnalysis {
 
 	public static int countUnion(ArrayList<ArrayList<String>> c1, ArrayList<ArrayList<String>> c2)
 	{
-		int intersection=0;
-		int total=0;
-		for(ArrayList<String> list1: c1)	
-		{
-			for(String s1: list1)
-			{
-				for(ArrayList<String> list2: c2)
-				{
-					for(String s2: list2)
-					{
-						if(s1.equals(s2))
-							intersection++;
-					}
-				}
-			}
-		}
-		for(ArrayList<String> list1: c1)	
-		{
-			total+=list1.size();
-		}
-		for(ArrayList<String> list2: c2)	
-		{
-			total+=list2.size();
-		}
-		return total-intersection;
+		return new ContingencyTable(c1, c2).getUnionSize();
 	}
 
 	public static double jaccardIndex(Community c1, Community c2)
 	{
 		double intersection=0;
 		double total=0;
-		for(String s1: c1.list)
+		HashSet<String> members = new HashSet<>(c1.list);
+		for(String s2: c2.list)
 		{
-			for(String s2: c2.list)
-			{
-				if(s1.equals(s2))
-					intersection++;
-			}
+			if(members.contains(s2))
+				intersection++;
 		}
 		total+=c1.list.size();
 		total+=c2.list.size();
 		return intersection/(total-intersection);
 	}
+	// See ContingencyTable.getNMI
 	public static double calculateNMI(ArrayList<ArrayList<String>> c1, ArrayList<ArrayList<String>> c2, double totalSize)
 	{
-		double numerator=0;
-		double denominator=0;
-		double tempP=0;
-		for(int i=0; i<c1.size(); i++)
-		{
-			for(int j=0; j<c2.size(); j++)
-			{
-				tempP=P(c1.get(i),c2.get(j),totalSize);
-				if(tempP!=0)
-					numerator+=tempP*Math.log10(tempP/(Pi_(c1.get(i),c2,totalSize)*P_j(c1,c2.get(j),totalSize)));
-			}
-		}
-		numerator*=-2;
-		for(int i=0; i<c1.size();i++)
-		{
-			tempP=Pi_(c1.get(i),c2,totalSize);
-			if(tempP!=0)
-				denominator+=tempP*Math.log10(tempP);
-		}
-		for(int j=0; j<c2.size();j++)
-		{
-			tempP=P_j(c1,c2.get(j),totalSize);
-			if(tempP!=0)
-				denominator+=tempP*Math.log10(tempP);
-		}
-		return numerator/denominator;
+		return new ContingencyTable(c1, c2).getNMI(totalSize);
 	}
 	public static double P(ArrayList<String> L1, ArrayList<String> L2, double totalSize)
 	{
 		double count=0;
-		for(String s: L1)
-			for(String t: L2)
-			{
-				if(s.equals(t))
-				{
-					count++;
-				}
-			}
+		HashSet<String> members = new HashSet<>(L1);
+		for(String t: L2)
+			if(members.contains(t))
+				count++;
 		return count/totalSize;
 	}
 	public static double Pi_(ArrayList<String> i, ArrayList<ArrayList<String>> j, double totalSize)
@@ -118,14 +64,14 @@ public class CommunityAnalysis {
 		return total;
 	}
 
-	public static HashMap<Integer, ArrayList<String>> getCommunities(Scanner sc)
+	public static HashMap<Integer, ArrayList<String>> getCommunities(MappedTokenizer sc)
 	{
 		HashMap<Integer, ArrayList<String>> communities = new HashMap<>(); 
 		ArrayList<String> temp = new ArrayList<>();
 		sc.nextLine();
 		int current=0;
 
-		while(sc.hasNextLine())
+		while(sc.hasNext())
 		{
 			current=sc.nextInt();
 			if(communities.containsKey(current))
@@ -166,36 +112,32 @@ public class CommunityAnalysis {
 		return result;
 	}
 
-	public static double[][] getTable(ArrayList<Scanner> input)
+	public static double[][] getTable(ArrayList<MappedTokenizer> input)
 	{
 		double[][] results = new double[input.size()][input.size()];
 		ArrayList<ArrayList<ArrayList<String>>> list = new ArrayList<>();
-		for(Scanner s: input)
+		for(MappedTokenizer s: input)
 		{
 			list.add(convertToList(getCommunities(s)));
 			s.close();
 		}
-		int tempTotal;
-		for(int i=0; i<list.size(); i++)
-		{
-			for(int j=0; j<list.size(); j++)
-			{
-				tempTotal = countUnion(list.get(i), list.get(j));
-				results[i][j] = calculateNMI(list.get(i),list.get(j), tempTotal);
-
-			}
-		}
+		// every pair is independent, so the tables are built in parallel
+		IntStream.range(0, list.size()*list.size()).parallel().forEach(p -> {
+			int i = p/list.size();
+			int j = p%list.size();
+			results[i][j] = new ContingencyTable(list.get(i), list.get(j)).getNMI();
+		});
 		return results;
 	}
 
 	public static void main(String[] args) throws IOException
 	{
-		Scanner Monday = new Scanner(new File(inputDirectory+"Monday\\Monday Duration Communities.txt"));
-		Scanner Tuesday = new Scanner(new File(inputDirectory+"Tuesday\\Tuesday Duration Communities.txt"));
-		Scanner Wednesday = new Scanner(new File(inputDirectory+"Wednesday\\Wednesday Duration Communities.txt"));
-		Scanner Thursday = new Scanner(new File(inputDirectory+"Thursday\\Thursday Duration Communities.txt"));
-		Scanner Friday = new Scanner(new File(inputDirectory+"Friday\\Friday Duration Communities.txt"));
-		ArrayList<Scanner> input = new ArrayList<>();
+		MappedTokenizer Monday = new MappedTokenizer(inputDirectory+"Monday\\Monday Duration Communities.txt");
+		MappedTokenizer Tuesday = new MappedTokenizer(inputDirectory+"Tuesday\\Tuesday Duration Communities.txt");
+		MappedTokenizer Wednesday = new MappedTokenizer(inputDirectory+"Wednesday\\Wednesday Duration Communities.txt");
+		MappedTokenizer Thursday = new MappedTokenizer(inputDirectory+"Thursday\\Thursday Duration Communities.txt");
+		MappedTokenizer Friday = new MappedTokenizer(inputDirectory+"Friday\\Friday Duration Communities.txt");
+		ArrayList<MappedTokenizer> input = new ArrayList<>();
 		input.add(Monday); input.add(Tuesday); input.add(Wednesday); input.add(Thursday); input.add(Friday);
 		double[][] result = getTable(input);
 
@@ -207,5 +149,17 @@ public class CommunityAnalysis {
 			}
 			System.out.println();
 		}
+
+		// communities that persist from one weekday to another
+		String[] days = {"Monday", "Tuesday", "Wednesday", "Thursday", "Friday"};
+		MinHashIndex index = new MinHashIndex();
+		for(int d=0; d<days.length; d++)
+		{
+			MappedTokenizer sc = new MappedTokenizer(inputDirectory+days[d]+"\\"+days[d]+" Duration Communities.txt");
+			index.addPartition(d, convertFormat(getCommunities(sc)));
+			sc.close();
+		}
+		for(MinHashIndex.Match m: index.findSimilar(.5))
+			System.out.printf("%s %d\t%s %d\t%.3f%n", days[m.partition1], m.c1.communityID, days[m.partition2], m.c2.communityID, m.jaccard);
 	}
 }
@@ -0,0 +1,212 @@
+/* Compact adjacency for contact graphs too large to hold as Edge objects.
+ *
+ * Rows are stored like CSRGraph, but each row's neighbors are sorted and written as varint deltas (the first one zigzag
+ * encoded relative to the row's own vertex) and each weight is quantized to 16 bits against a per-graph scale, so a
+ * weight decodes as q*scale. Positive weights never quantize to 0, so no edge disappears. An arc takes roughly 3 to 4
+ * bytes, against 12 in CSRGraph and well over 100 for an Edge object plus its weightRanks entries.
+ *
+ * Rows are decoded on demand into caller-owned buffers of getMaxDegree() entries.
+ */
+
+import java.util.Arrays;
+
+public class CompactGraph {
+	static final int quantizationLevels=65535;
+
+	private int numVertices;
+	private int maxDegree;
+	private int[] rowBytes; //start of each row in neighbors
+	private int[] rowArcs; //start of each row in weights
+	private byte[] neighbors;
+	private short[] weights;
+	private double scale;
+
+	private CompactGraph()
+	{
+	}
+
+	public static CompactGraph fromCSR(CSRGraph csr)
+	{
+		CompactGraph result = new CompactGraph();
+		int n = csr.getNumVertices();
+		int[] offsets = csr.getOffsets();
+		int[] targets = csr.getTargets();
+		double[] exact = csr.getWeights();
+		double max=0;
+		for(double w: exact)
+			max=Math.max(max, w);
+		result.numVertices=n;
+		result.scale = max>0 ? max/quantizationLevels : 1;
+		result.rowBytes = new int[n+1];
+		result.rowArcs = offsets.clone();
+		result.weights = new short[targets.length];
+
+		byte[] out = new byte[Math.max(16, targets.length*2)];
+		int pos=0;
+		long[] row = new long[0];
+		int degree;
+		int previous;
+		int target;
+		for(int v=0; v<n; v++)
+		{
+			result.rowBytes[v]=pos;
+			degree=offsets[v+1]-offsets[v];
+			result.maxDegree=Math.max(result.maxDegree, degree);
+			if(row.length<degree)
+				row = new long[degree];
+			// sort the row by target, carrying the arc position along in the low bits
+			for(int a=0; a<degree; a++)
+				row[a]=((long)targets[offsets[v]+a]<<32)|a;
+			Arrays.sort(row, 0, degree);
+			previous=v;
+			for(int a=0; a<degree; a++)
+			{
+				target=(int)(row[a]>>>32);
+				if(out.length-pos<5)
+					out=Arrays.copyOf(out, out.length*2);
+				pos = a==0 ? writeVarint(out, pos, (target-v)<<1^(target-v)>>31) : writeVarint(out, pos, target-previous);
+				previous=target;
+				result.weights[offsets[v]+a]=result.quantize(exact[offsets[v]+(int)row[a]]);
+			}
+		}
+		result.rowBytes[n]=pos;
+		result.neighbors=Arrays.copyOf(out, pos);
+		return result;
+	}
+
+	private static int writeVarint(byte[] out, int pos, int value)
+	{
+		while((value&~0x7F)!=0)
+		{
+			out[pos++]=(byte)((value&0x7F)|0x80);
+			value>>>=7;
+		}
+		out[pos++]=(byte)value;
+		return pos;
+	}
+	private short quantize(double w)
+	{
+		if(w<=0)
+			return 0;
+		long q = Math.round(w/scale);
+		return (short)Math.max(1, Math.min(quantizationLevels, q));
+	}
+
+	/*	Decodes the row of v.
+	 * 	targets, weights: filled with the neighbors of v in ascending order and their weights. Must hold getMaxDegree() entries.
+	 * 	Returns the degree of v.
+	 */
+	public int decodeRow(int v, int[] targets, double[] weights)
+	{
+		int degree = rowArcs[v+1]-rowArcs[v];
+		int pos = rowBytes[v];
+		int value;
+		int shift;
+		byte b;
+		int target=v;
+		for(int a=0; a<degree; a++)
+		{
+			value=0;
+			shift=0;
+			do
+			{
+				b=neighbors[pos++];
+				value|=(b&0x7F)<<shift;
+				shift+=7;
+			}
+			while(b<0);
+			target += a==0 ? (value>>>1)^-(value&1) : value;
+			targets[a]=target;
+			weights[a]=(this.weights[rowArcs[v]+a]&0xFFFF)*scale;
+		}
+		return degree;
+	}
+
+	public int getNumVertices()
+	{
+		return numVertices;
+	}
+	public int getNumArcs()
+	{
+		return rowArcs[numVertices];
+	}
+	public int getDegree(int v)
+	{
+		return rowArcs[v+1]-rowArcs[v];
+	}
+	public int getMaxDegree()
+	{
+		return maxDegree;
+	}
+	public double getScale()
+	{
+		return scale;
+	}
+	public double getWeightedDegree(int v)
+	{
+		double result=0;
+		for(int a=rowArcs[v]; a<rowArcs[v+1]; a++)
+			result+=(weights[a]&0xFFFF)*scale;
+		return result;
+	}
+	// memory held by the encoded arrays
+	public long getSizeInBytes()
+	{
+		return 4L*(rowBytes.length+rowArcs.length)+neighbors.length+2L*weights.length;
+	}
+	byte[] getNeighborBytes()
+	{
+		return neighbors;
+	}
+	short[] getQuantizedWeights()
+	{
+		return weights;
+	}
+
+	// Compares every decoded weight and weighted degree with the full precision graph this was built from.
+	public String accuracyReport(CSRGraph exact)
+	{
+		int[] targets = new int[maxDegree];
+		double[] decoded = new double[maxDegree];
+		int[] offsets = exact.getOffsets();
+		double maxAbsError=0;
+		double maxRelError=0;
+		double sumRelError=0;
+		double maxDegreeError=0;
+		double w;
+		double error;
+		int degree;
+		for(int v=0; v<numVertices; v++)
+		{
+			degree=decodeRow(v, targets, decoded);
+			// the exact row is unsorted, so compare sorted weights per target
+			long[] row = new long[degree];
+			for(int a=0; a<degree; a++)
+				row[a]=((long)exact.getTargets()[offsets[v]+a]<<32)|a;
+			Arrays.sort(row);
+			for(int a=0; a<degree; a++)
+			{
+				if((int)(row[a]>>>32)!=targets[a])
+					throw new IllegalStateException("Neighbor "+a+" of vertex "+v+" does not round trip");
+				w=exact.getWeights()[offsets[v]+(int)row[a]];
+				error=Math.abs(decoded[a]-w);
+				maxAbsError=Math.max(maxAbsError, error);
+				if(w!=0)
+				{
+					maxRelError=Math.max(maxRelError, error/w);
+					sumRelError+=error/w;
+				}
+			}
+			if(exact.getWeightedDegree(v)!=0)
+				maxDegreeError=Math.max(maxDegreeError, Math.abs(getWeightedDegree(v)-exact.getWeightedDegree(v))/exact.getWeightedDegree(v));
+		}
+		long exactBytes = 4L*(numVertices+1)+12L*exact.getNumArcs();
+		return "arcs\t"+getNumArcs()+"\n"
+				+"scale\t"+scale+"\n"
+				+"max absolute weight error\t"+maxAbsError+"\n"
+				+"max relative weight error\t"+maxRelError+"\n"
+				+"mean relative weight error\t"+(getNumArcs()==0 ? 0 : sumRelError/getNumArcs())+"\n"
+				+"max relative weighted degree error\t"+maxDegreeError+"\n"
+				+"bytes per arc\t"+(double)getSizeInBytes()/Math.max(1, getNumArcs())+" (CSR "+(double)exactBytes/Math.max(1, exact.getNumArcs())+")";
+	}
+}
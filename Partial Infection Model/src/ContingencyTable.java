@@ -0,0 +1,127 @@
+/* Contingency table of two partitions of (mostly) the same vertices, for NMI and Jaccard comparisons.
+ *
+ * Every vertex of the first partition is mapped to its community once, then each vertex of the second partition adds 1
+ * to the cell (its community in the first, its community in the second). Only non-zero cells are stored, so building the
+ * table is O(n) and every measure below is O(communities + non-zero cells). Communities are numbered by their position
+ * in the lists given, and a vertex is expected in at most one community per partition.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+public class ContingencyTable {
+	private int[] rowSizes; //size of each community of the first partition
+	private int[] colSizes;
+	private int[] rowOverlap; //members of each row community that also appear in the second partition
+	private int[] colOverlap;
+	private long[] cells; //packed (row, column), ascending
+	private double[] counts;
+	private int unionSize;
+
+	public ContingencyTable(ArrayList<ArrayList<String>> c1, ArrayList<ArrayList<String>> c2)
+	{
+		HashMap<String, Integer> rowOf = new HashMap<>();
+		rowSizes = new int[c1.size()];
+		for(int i=0; i<c1.size(); i++)
+		{
+			rowSizes[i]=c1.get(i).size();
+			for(String s: c1.get(i))
+				rowOf.put(s, i);
+		}
+		colSizes = new int[c2.size()];
+		rowOverlap = new int[c1.size()];
+		colOverlap = new int[c2.size()];
+		LongDoubleMap table = new LongDoubleMap(c1.size()+c2.size());
+		int shared=0;
+		Integer i;
+		for(int j=0; j<c2.size(); j++)
+		{
+			colSizes[j]=c2.get(j).size();
+			for(String s: c2.get(j))
+			{
+				i=rowOf.get(s);
+				if(i==null)
+					continue;
+				table.add(pack(i, j), 1);
+				rowOverlap[i]++;
+				colOverlap[j]++;
+				shared++;
+			}
+		}
+		cells=table.getKeys();
+		counts = new double[cells.length];
+		for(int c=0; c<cells.length; c++)
+			counts[c]=table.get(cells[c]);
+		unionSize=rowOf.size();
+		for(int size: colSizes)
+			unionSize+=size;
+		unionSize-=shared;
+	}
+
+	private static long pack(int row, int column)
+	{
+		return (long)row<<32|column;
+	}
+
+	// Vertices in either partition, as CommunityAnalysis.countUnion
+	public int getUnionSize()
+	{
+		return unionSize;
+	}
+
+	/*	Normalized mutual information of the partitions, with probabilities taken over totalSize vertices
+	 * 	(usually getUnionSize()). Marginals only count vertices present in both partitions.
+	 */
+	public double getNMI(double totalSize)
+	{
+		double numerator=0;
+		double denominator=0;
+		double p;
+		for(int c=0; c<cells.length; c++)
+		{
+			p=counts[c]/totalSize;
+			numerator+=p*Math.log10(p/((rowOverlap[(int)(cells[c]>>>32)]/totalSize)*(colOverlap[(int)cells[c]]/totalSize)));
+		}
+		numerator*=-2;
+		for(int overlap: rowOverlap)
+			if(overlap!=0)
+				denominator+=overlap/totalSize*Math.log10(overlap/totalSize);
+		for(int overlap: colOverlap)
+			if(overlap!=0)
+				denominator+=overlap/totalSize*Math.log10(overlap/totalSize);
+		return numerator/denominator;
+	}
+	public double getNMI()
+	{
+		return getNMI(unionSize);
+	}
+
+	// Vertices in community row of the first partition and community column of the second
+	public double getCount(int row, int column)
+	{
+		int c = Arrays.binarySearch(cells, pack(row, column));
+		return c<0 ? 0 : counts[c];
+	}
+	public double getJaccard(int row, int column)
+	{
+		double intersection = getCount(row, column);
+		return intersection/(rowSizes[row]+colSizes[column]-intersection);
+	}
+	/*	Jaccard index of every pair of communities that share a vertex, keyed by (long)row<<32|column.
+	 * 	All other pairs have index 0.
+	 */
+	public LongDoubleMap getJaccardIndices()
+	{
+		LongDoubleMap result = new LongDoubleMap(cells.length);
+		int row;
+		int column;
+		for(int c=0; c<cells.length; c++)
+		{
+			row=(int)(cells[c]>>>32);
+			column=(int)cells[c];
+			result.add(cells[c], counts[c]/(rowSizes[row]+colSizes[column]-counts[c]));
+		}
+		return result;
+	}
+}
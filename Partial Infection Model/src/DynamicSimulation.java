@@ -1,6 +1,15 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 
 public class DynamicSimulation {
@@ -24,6 +33,12 @@ public class DynamicSimulation {
 	private int infectiousPd;
 
 	ArrayList<double[]> cumulativeData;
+	private boolean verbose; //prints each day of the deterministic model to console
+	private File checkpointDirectory; //null unless setCheckpoints was called
+	private int checkpointInterval;
+	private Future<?> pendingCheckpoint; //last checkpoint handed to the background writer
+	private ResultCache resultCache; //null unless setResultCache was called
+	private byte[] graphFingerprint;
 
 	public DynamicSimulation(Graph[] graphList,ArrayList<Vertice> vertices, double tProbability, int latentPd, int infectiousPd)
 	{
@@ -47,11 +62,149 @@ public class DynamicSimulation {
 		weightRanks=new ArrayList<>();
 		setWeightRanks();
 		cumulativeData = new ArrayList<>();
+		verbose=true;
+		checkpointDirectory=null;
+		pendingCheckpoint=null;
+		resultCache=null;
 
 		for(Vertice v: vertices)
 			v.setProperties(latentPd, infectiousPd);
 	}
 
+	public void setVerbose(boolean verbose)
+	{
+		this.verbose=verbose;
+	}
+
+	// Writes a checkpoint into directory every interval days of trickleSimul or simul. Pass null to stop.
+	public void setCheckpoints(File directory, int interval)
+	{
+		if(directory!=null&&interval<=0)
+			throw new IllegalArgumentException("Checkpoint interval must be positive: "+interval);
+		checkpointDirectory=directory;
+		checkpointInterval=interval;
+	}
+	// Captures the full simulation state and writes it to file in the background. The returned Future completes once the file is written.
+	public Future<?> checkpoint(File file)
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try(DataOutputStream out = new DataOutputStream(bytes))
+		{
+			SimulationCheckpoint.writeHeader(out, SimulationCheckpoint.dynamicKind, vertices.size(), latentPd, infectiousPd);
+			SimulationCheckpoint.writeRNG(out);
+			writeState(out);
+		}
+		catch(IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+		pendingCheckpoint = SimulationCheckpoint.writeAsync(file, bytes.toByteArray());
+		return pendingCheckpoint;
+	}
+	// Everything a run depends on except the RNG
+	private void writeState(DataOutputStream out) throws IOException
+	{
+		writeFields(out);
+		SimulationCheckpoint.writeVertices(out, vertices);
+	}
+	private void readState(DataInputStream in) throws IOException
+	{
+		readFields(in);
+		SimulationCheckpoint.readVertices(in, vertices);
+	}
+	private void writeFields(DataOutputStream out) throws IOException
+	{
+		out.writeInt(day);
+		out.writeInt(weekday);
+		out.writeInt(startingWkDay);
+		out.writeDouble(totalEverInfected);
+		out.writeDouble(previousTotal);
+		out.writeDouble(currentTotal);
+		out.writeDouble(currentInfected);
+		out.writeDouble(peakInfected);
+		out.writeInt(peakDayInfected);
+		SimulationCheckpoint.writeData(out, cumulativeData);
+	}
+	private void readFields(DataInputStream in) throws IOException
+	{
+		day=in.readInt();
+		weekday=in.readInt();
+		startingWkDay=in.readInt();
+		totalEverInfected=in.readDouble();
+		previousTotal=in.readDouble();
+		currentTotal=in.readDouble();
+		currentInfected=in.readDouble();
+		peakInfected=in.readDouble();
+		peakDayInfected=in.readInt();
+		cumulativeData=SimulationCheckpoint.readData(in);
+	}
+	// What the result cache stores of a finished run: the fields and the final record of each vertex
+	private byte[] getResult()
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try(DataOutputStream out = new DataOutputStream(bytes))
+		{
+			writeFields(out);
+			SimulationCheckpoint.writeResults(out, vertices);
+		}
+		catch(IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+		return bytes.toByteArray();
+	}
+	private void setResult(byte[] result)
+	{
+		try(DataInputStream in = new DataInputStream(new ByteArrayInputStream(result)))
+		{
+			readFields(in);
+			SimulationCheckpoint.readResults(in, vertices);
+		}
+		catch(IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+	}
+	// Replaces the current state with a checkpoint written by a simulation on the same graph and periods.
+	// Continue the run with continueTrickleSimul or continueSimul.
+	public void restore(File file) throws IOException
+	{
+		try(DataInputStream in = SimulationCheckpoint.open(file, SimulationCheckpoint.dynamicKind, vertices.size(), latentPd, infectiousPd))
+		{
+			SimulationCheckpoint.readRNG(in);
+			readState(in);
+		}
+	}
+	// Serves repeated deterministic runs on this graph from cache. Pass null to disable.
+	public void setResultCache(ResultCache cache)
+	{
+		resultCache=cache;
+		graphFingerprint = cache==null ? null : ResultCache.fingerprint(SimulationCheckpoint.dynamicKind, graphList, vertices, tProbability, latentPd, infectiousPd);
+	}
+	private void checkpointIfDue()
+	{
+		if(checkpointDirectory!=null&&day%checkpointInterval==0)
+			checkpoint(new File(checkpointDirectory, "day "+day+".checkpoint"));
+	}
+	// Waits for the background writer, so a finished run never leaves a checkpoint half written
+	private void awaitCheckpoint()
+	{
+		if(pendingCheckpoint==null)
+			return;
+		try
+		{
+			pendingCheckpoint.get();
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		catch(ExecutionException e)
+		{
+			throw new IllegalStateException("Checkpoint could not be written", e.getCause());
+		}
+		pendingCheckpoint=null;
+	}
 	public Graph getGraph(int dayOfWeek)
 	{
 		return graphList[dayOfWeek];
@@ -186,7 +339,7 @@ public class DynamicSimulation {
 				other.searchPlaceholder=runningTotal;
 			}
 		}
-		double random = Main.RNG.nextDouble()*runningTotal;
+		double random = Main.RNG.get().nextDouble()*runningTotal;
 		int startIndex=0;
 		int endIndex=result.size()-1;
 		int currentIndex=0;
@@ -218,7 +371,7 @@ public class DynamicSimulation {
 		Vertice other;
 		temp = new ArrayList<>(graphList[weekday].getVertices());
 		while (temp.size()>0) {
-			current = temp.get((int)(Main.RNG.nextDouble()*temp.size()));
+			current = temp.get((int)(Main.RNG.get().nextDouble()*temp.size()));
 			other = generateRandContact(current);
 			if (other==null) {
 				temp.remove(current);
@@ -238,6 +391,11 @@ public class DynamicSimulation {
 		}
 	}
 	public void simul()
+	{
+		continueSimul();
+	}
+	// Continues a Monte Carlo run, e.g. one restored from a checkpoint
+	public void continueSimul()
 	{
 	//	System.out.println("day \t S \t E \t I \t R");
 		while(hasRemaining())
@@ -250,9 +408,11 @@ public class DynamicSimulation {
 				peakInfected=cumulativeData.get(day-1)[2];
 				peakDayInfected=day-1;
 			}
+			checkpointIfDue();
 		}
 	//	show();
 		cumulativeData.add(new double[] {getNumSusceptible(), getNumExposed(), getNumInfected(), getNumResistant()});
+		awaitCheckpoint();
 	}
 
 	//	Functions for the deterministic version below:
@@ -344,14 +504,31 @@ public class DynamicSimulation {
 			v.checkCumulationRecovery(); 
 		}
 	}
+	// A run served from the result cache ends with the same totals, data and vertex states, cumulations and probabilities
+	// of not having recovered as a simulated one. Trackers are left empty.
 	public void trickleSimul()
 	{
+		String key = resultCache==null ? null : ResultCache.getKey(graphFingerprint, vertices, startingWkDay);
+		byte[] cached = key==null ? null : resultCache.get(key);
+		if(cached!=null)
+		{
+			setResult(cached);
+			return;
+		}
 		currentInfected = expectedNumInfected();
 		currentTotal=currentInfected;
+		continueTrickleSimul();
+		if(key!=null)
+			resultCache.put(key, getResult());
+	}
+	// Continues a deterministic run, e.g. one restored from a checkpoint
+	public void continueTrickleSimul()
+	{
 		while(Math.abs(currentTotal-previousTotal)>.5||currentTotal>0.5||day<20)
 		{
 			previousTotal=currentTotal;
-			showTrickle();
+			if(verbose)
+				showTrickle();
 			cumulativeData.add(new double[] {numSusceptible(), expectedNumExposed(), expectedNumInfected(), numRecovered()});
 			runTrickleDay();
 			currentInfected=expectedNumInfected();
@@ -362,9 +539,12 @@ public class DynamicSimulation {
 			}
 			currentTotal=currentInfected+expectedNumExposed();
 			totalEverInfected+=currentInfected;
+			checkpointIfDue();
 		}
-		showTrickle();
+		if(verbose)
+			showTrickle();
 		cumulativeData.add(new double[] {numSusceptible(), expectedNumExposed(), expectedNumInfected(), numRecovered()});
+		awaitCheckpoint();
 	}
 	public void showTrickle()
 	{
@@ -0,0 +1,416 @@
+/* Batch runner for experiments described in a manifest file, so the data set is loaded once instead of once per edit of Main.main.
+ *
+ * The graphs are read from the binary snapshots written by Main (run Main once with useSnapshot=true for each mode first).
+ * Each job materializes its own Vertice and Graph objects from the memory-mapped snapshot, since the simulations keep their
+ * state in the vertices, and jobs run concurrently on a fixed size thread pool. Every job writes its own result file.
+ * With Main.useCompactGraph, static jobs only materialize vertices and share the snapshot's CompactGraph instead.
+ *
+ * Manifest format: one job per line, whitespace separated key=value pairs. Lines starting with # are ignored.
+ * 	name=<job name>				required
+ * 	engine=static|dynamic		G_F or the rotating weekday graphs (default static)
+ * 	model=pim|montecarlo		deterministic PIM or the stochastic SEIR model (default pim)
+ * 	seeds=all|first:<n>|community:<ID>|<ID>,<ID>,...		initially infected vertex of each run (default all)
+ * 	trials=<n>					Monte Carlo runs per seed (default 1)
+ * 	vacc=none|global|random|community|ring|greedy|reactionary		vaccination strategy applied before the runs (default none)
+ * 	vaccines=<n> trait=<centrality index> pickHigh=true|false target=<community ID>		vaccination parameters
+ * 	greedy places the vaccines with VaccinePlacement, minimizing the PIM outbreak size over the job's seeds
+ * 	candidates=<n>				greedy only picks among the n vertices ranked first by trait and pickHigh, 0 for all of them
+ * 								(default max(100, 2*vaccines))
+ * 	reactionary runs the experiment of Main.runReactionaryVaccDS/SS with ReactionaryVaccination: every community in turn
+ * 	is the target of a ring, and each of its members seeds one run. seeds, trials and target are not used, and the
+ * 	weekday graphs only support model=pim. The result file only holds the summary line.
+ * 	T=<transmission probability> latent=<days> infectious=<days>		default to the values in Main
+ * 	rngSeed=<seed>				seed of the job's random generator (default 743)
+ * 	output=<file>				result file, relative to the output directory (default <name>.txt)
+ *
+ * Example:
+ * 	name=ring50 engine=dynamic vacc=ring target=3 vaccines=50 trait=0 pickHigh=true seeds=community:3
+ *
+ * Result file: one line per run with seed ID, total ever infected (number recovered for Monte Carlo), peak infected and peak day,
+ * followed by the mean, standard deviation and standard error of the totals.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class ExperimentRunner {
+	private File outputDirectory;
+	private GraphSnapshot[] snapshots; //[0] G_F, [1] weekday graphs, loaded when a job first needs them
+	private ArrayList<HashMap<Integer, ArrayList<String>>> commMaps; //of snapshots[0] and [1]
+	private Graph[] metas; //community meta-graphs of snapshots[0] and [1], built when a ring vaccination first needs them
+	private double[][][] dists;
+
+	public ExperimentRunner(File outputDirectory)
+	{
+		this.outputDirectory=outputDirectory;
+		snapshots = new GraphSnapshot[2];
+		commMaps = new ArrayList<>(Arrays.asList(null, null));
+		metas = new Graph[2];
+		dists = new double[2][][];
+	}
+
+	static class Job
+	{
+		private String name;
+		private int line; //position in the manifest, comments excluded
+		private HashMap<String, String> parameters;
+
+		public Job(int line)
+		{
+			this.line=line;
+			parameters = new HashMap<>();
+		}
+		public String getName()
+		{
+			return name;
+		}
+		public String get(String key, String defaultValue)
+		{
+			return parameters.containsKey(key) ? parameters.get(key) : defaultValue;
+		}
+		public int getInt(String key, int defaultValue)
+		{
+			try
+			{
+				return parameters.containsKey(key) ? Integer.parseInt(parameters.get(key)) : defaultValue;
+			}
+			catch(NumberFormatException e)
+			{
+				throw error(key+" must be an integer");
+			}
+		}
+		public double getDouble(String key, double defaultValue)
+		{
+			try
+			{
+				return parameters.containsKey(key) ? Double.parseDouble(parameters.get(key)) : defaultValue;
+			}
+			catch(NumberFormatException e)
+			{
+				throw error(key+" must be a number");
+			}
+		}
+		public boolean getBoolean(String key, boolean defaultValue)
+		{
+			return parameters.containsKey(key) ? Boolean.parseBoolean(parameters.get(key)) : defaultValue;
+		}
+		public IllegalArgumentException error(String message)
+		{
+			return new IllegalArgumentException("Manifest entry "+line+" ("+name+"): "+message);
+		}
+	}
+
+	public static ArrayList<Job> readManifest(File manifest) throws IOException
+	{
+		ArrayList<Job> jobs = new ArrayList<>();
+		MappedTokenizer sc = new MappedTokenizer(manifest);
+		int line=0;
+		String token;
+		Job current;
+		while(sc.hasNext())
+		{
+			line++;
+			token=sc.next();
+			if(token.startsWith("#"))
+			{
+				sc.nextLine();
+				continue;
+			}
+			current = new Job(line);
+			while(true)
+			{
+				int split = token.indexOf('=');
+				if(split<=0)
+					throw new IllegalArgumentException("Manifest entry "+line+": expected key=value, found "+token);
+				current.parameters.put(token.substring(0, split), token.substring(split+1));
+				if(!sc.hasNextInLine())
+					break;
+				token=sc.next();
+			}
+			current.name=current.parameters.get("name");
+			if(current.name==null)
+				throw current.error("missing name");
+			jobs.add(current);
+		}
+		sc.close();
+		return jobs;
+	}
+
+	private synchronized GraphSnapshot getSnapshot(boolean fullGraph) throws IOException
+	{
+		int i = fullGraph ? 0 : 1;
+		if(snapshots[i]==null)
+		{
+			File file = Main.getSnapshotFile(fullGraph);
+			if(!file.exists())
+				throw new IOException(file+" does not exist. Run Main with useSnapshot=true and fullGraphMode="+fullGraph+" to create it");
+			GraphSnapshot snapshot = new GraphSnapshot(file);
+			if(!Arrays.equals(snapshot.getFingerprint(), Main.getInputFingerprint(fullGraph)))
+				throw new IOException(file+" was written from other inputs or settings. Run Main with useSnapshot=true and fullGraphMode="+fullGraph+" to rebuild it");
+			snapshots[i] = snapshot;
+			commMaps.set(i, snapshots[i].getCommMap());
+		}
+		return snapshots[i];
+	}
+	private synchronized HashMap<Integer, ArrayList<String>> getCommMap(boolean fullGraph) throws IOException
+	{
+		getSnapshot(fullGraph);
+		return commMaps.get(fullGraph ? 0 : 1);
+	}
+	// graphs: a job's copy of the snapshot's graphs, only read the first time. null to materialize them here.
+	private synchronized Graph getMeta(boolean fullGraph, Graph[] graphs) throws IOException
+	{
+		int i = fullGraph ? 0 : 1;
+		if(metas[i]==null)
+		{
+			if(graphs==null)
+				graphs=getSnapshot(fullGraph).createGraphs(getSnapshot(fullGraph).createVertices(Main.numDayGraphs));
+			metas[i] = GraphBuilder.buildMetaGraph(graphs, getCommMap(fullGraph));
+			dists[i] = Main.allPairsSP(metas[i], null);
+		}
+		return metas[i];
+	}
+
+	// Runs one job on the calling thread and writes its result file. Returns {mean, stdDev, stdError} of the totals.
+	public double[] runJob(Job job) throws IOException
+	{
+		Main.RNG.set(new SeededRandom(job.getInt("rngSeed", 743)));
+		String engine = job.get("engine", "static");
+		if(!engine.equals("static")&&!engine.equals("dynamic"))
+			throw job.error("unknown engine "+engine);
+		boolean fullGraph = engine.equals("static");
+		String model = job.get("model", "pim");
+		if(!model.equals("pim")&&!model.equals("montecarlo"))
+			throw job.error("unknown model "+model);
+		boolean monteCarlo = model.equals("montecarlo");
+		double T = job.getDouble("T", Main.transmissionProbability);
+		int latent = job.getInt("latent", Main.latentPeriod);
+		int infectious = job.getInt("infectious", Main.infectiousPeriod);
+		int trials = monteCarlo ? job.getInt("trials", 1) : 1;
+
+		GraphSnapshot snapshot = getSnapshot(fullGraph);
+		HashMap<Integer, ArrayList<String>> commMap = getCommMap(fullGraph);
+		if(job.get("vacc", "none").equals("reactionary"))
+			return runReactionary(job, fullGraph, monteCarlo, T, latent, infectious);
+		ArrayList<Vertice> vertices = snapshot.createVertices(Main.numDayGraphs);
+		boolean compact = fullGraph&&Main.useCompactGraph;
+		Graph[] graphs = compact ? null : snapshot.createGraphs(vertices);
+		HashMap<String, Vertice> map = new HashMap<>();
+		for(Vertice v: vertices)
+			map.put(v.getID(), v);
+
+		StaticSimulation SS = null;
+		DynamicSimulation DS = null;
+		if(fullGraph)
+		{
+			SS = compact ? new StaticSimulation(snapshot.getCompactLayer(0), vertices, T, latent, infectious) : new StaticSimulation(graphs[0], T, latent, infectious);
+			SS.setVerbose(false);
+		}
+		else
+		{
+			DS = new DynamicSimulation(graphs, vertices, T, latent, infectious);
+			DS.setVerbose(false);
+		}
+		ArrayList<Vertice> seeds = getSeeds(job, vertices, map, commMap);
+		vaccinate(job, fullGraph, graphs, vertices, map, commMap, seeds);
+
+		ArrayList<Double> analysisArray = new ArrayList<>();
+		double total;
+		double peak;
+		int peakDay;
+		try(PrintWriter pw = new PrintWriter(new File(outputDirectory, job.get("output", job.getName()+".txt"))))
+		{
+			for(Vertice v: seeds)
+			{
+				for(int t=0; t<trials; t++)
+				{
+					if(SS!=null)
+					{
+						if(monteCarlo)
+						{
+							SS.setInfected(v);
+							SS.simul();
+							total=SS.getNumResistant();
+						}
+						else
+						{
+							SS.setTrickler(v);
+							SS.trickleSimul();
+							total=SS.getTotalEverInfected();
+						}
+						peak=SS.getPeakInfected();
+						peakDay=SS.getPeakDayInfected();
+						SS.reset(false);
+					}
+					else
+					{
+						DS.setStartDay(v.getStartingPoint());
+						if(monteCarlo)
+						{
+							DS.setInfected(v);
+							DS.simul();
+							total=DS.getNumResistant();
+						}
+						else
+						{
+							DS.setTrickler(v);
+							DS.trickleSimul();
+							total=DS.getTotalEverInfected();
+						}
+						peak=DS.getPeakInfected();
+						peakDay=DS.getPeakDayInfected();
+						DS.reset(false);
+					}
+					analysisArray.add(total);
+					pw.println(v.getID()+"\t"+total+"\t"+peak+"\t"+peakDay);
+				}
+			}
+			double[] result = {Main.getMean(analysisArray), Main.getstdDev(analysisArray), Main.getstdError(analysisArray)};
+			pw.println(result[0]+"\t"+result[1]+"\t"+result[2]);
+			return result;
+		}
+	}
+
+	// The reactionary vaccination experiment, with the target communities run in parallel
+	private double[] runReactionary(Job job, boolean fullGraph, boolean monteCarlo, double T, int latent, int infectious) throws IOException
+	{
+		if(monteCarlo&&!fullGraph)
+			throw job.error("reactionary vaccination on the weekday graphs only supports model=pim");
+		Graph Meta = getMeta(fullGraph, null);
+		ReactionaryVaccination reactionary = new ReactionaryVaccination(getSnapshot(fullGraph), fullGraph, T, latent, infectious);
+		double[] result = reactionary.run(Meta, dists[fullGraph ? 0 : 1], getCommMap(fullGraph), job.getInt("vaccines", 0), job.getInt("trait", 0), job.getBoolean("pickHigh", true), monteCarlo);
+		try(PrintWriter pw = new PrintWriter(new File(outputDirectory, job.get("output", job.getName()+".txt"))))
+		{
+			pw.println(result[0]+"\t"+result[1]+"\t"+result[2]);
+		}
+		return result;
+	}
+
+	private void vaccinate(Job job, boolean fullGraph, Graph[] graphs, ArrayList<Vertice> vertices, HashMap<String, Vertice> map, HashMap<Integer, ArrayList<String>> commMap, ArrayList<Vertice> seeds) throws IOException
+	{
+		String vacc = job.get("vacc", "none");
+		int vaccines = job.getInt("vaccines", 0);
+		int trait = job.getInt("trait", 0);
+		boolean pickHigh = job.getBoolean("pickHigh", true);
+		if(vacc.equals("none"))
+			return;
+		if(vacc.equals("global"))
+			Main.vaccGlobalPeaks(vertices, trait, vaccines, pickHigh);
+		else if(vacc.equals("random"))
+			Main.vaccRandomNodes(vertices, vaccines);
+		else if(vacc.equals("greedy"))
+		{
+			// every candidate costs a PIM run per seed in the first round, so only the top of the trait's ranking is tried
+			int numCandidates = job.getInt("candidates", Math.max(100, 2*vaccines));
+			if(numCandidates<=0)
+				numCandidates=vertices.size();
+			ArrayList<String> candidates = new ArrayList<>();
+			for(Vertice v: new Ranking(vertices, trait).top(numCandidates, pickHigh))
+				candidates.add(v.getID());
+			ArrayList<String> seedIDs = new ArrayList<>();
+			for(Vertice v: seeds)
+				seedIDs.add(v.getID());
+			VaccinePlacement placement = new VaccinePlacement(getSnapshot(fullGraph), fullGraph, job.getDouble("T", Main.transmissionProbability), job.getInt("latent", Main.latentPeriod), job.getInt("infectious", Main.infectiousPeriod));
+			for(String s: placement.place(candidates, seedIDs, vaccines))
+			{
+				map.get(s).setProbNotRecovered(0);
+				map.get(s).setVaccinationState(true);
+			}
+		}
+		else if(vacc.equals("community")||vacc.equals("ring"))
+		{
+			int target = job.getInt("target", Integer.MIN_VALUE);
+			if(!commMap.containsKey(target))
+				throw job.error("target must be a community ID");
+			if(vacc.equals("community"))
+				Main.vaccCommunity(commMap, map, target);
+			else
+			{
+				Graph communities = getMeta(fullGraph, graphs);
+				Main.runRingVacc(communities, commMap, map, dists[fullGraph ? 0 : 1], target, vaccines, trait, pickHigh);
+			}
+		}
+		else
+			throw job.error("unknown vaccination strategy "+vacc);
+	}
+
+	private ArrayList<Vertice> getSeeds(Job job, ArrayList<Vertice> vertices, HashMap<String, Vertice> map, HashMap<Integer, ArrayList<String>> commMap)
+	{
+		String seeds = job.get("seeds", "all");
+		ArrayList<Vertice> result = new ArrayList<>();
+		if(seeds.equals("all"))
+			result.addAll(vertices);
+		else if(seeds.startsWith("first:"))
+		{
+			int n = Integer.parseInt(seeds.substring(6));
+			result.addAll(vertices.subList(0, Math.min(n, vertices.size())));
+		}
+		else if(seeds.startsWith("community:"))
+		{
+			ArrayList<String> members = commMap.get(Integer.parseInt(seeds.substring(10)));
+			if(members==null)
+				throw job.error("no community "+seeds.substring(10));
+			for(String s: members)
+				result.add(map.get(s));
+		}
+		else
+		{
+			for(String s: seeds.split(","))
+			{
+				if(!map.containsKey(s))
+					throw job.error("no vertex "+s);
+				result.add(map.get(s));
+			}
+		}
+		return result;
+	}
+
+	/*	Input:
+	 * 	jobs: jobs read from a manifest
+	 * 	threads: maximum number of jobs running at once. Each running job holds its own copy of the graph.
+	 */
+	public void runAll(ArrayList<Job> jobs, int threads) throws InterruptedException
+	{
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		ArrayList<Future<double[]>> results = new ArrayList<>();
+		for(Job job: jobs)
+			results.add(executor.submit(() -> runJob(job)));
+		executor.shutdown();
+		double[] result;
+		for(int i=0; i<jobs.size(); i++)
+		{
+			try
+			{
+				result=results.get(i).get();
+				System.out.println(jobs.get(i).getName()+"\t"+result[0]+"\t"+result[1]+"\t"+result[2]);
+			}
+			catch(ExecutionException e)
+			{
+				System.out.println(jobs.get(i).getName()+"\t failed: "+e.getCause());
+			}
+		}
+	}
+
+	// Arguments: manifest file, optional output directory (default working directory), optional number of threads
+	public static void main(String args[]) throws IOException, InterruptedException
+	{
+		if(args.length<1)
+		{
+			System.out.println("Usage: ExperimentRunner <manifest> [output directory] [threads]");
+			return;
+		}
+		File outputDirectory = new File(args.length>1 ? args[1] : ".");
+		int threads = args.length>2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+		ArrayList<Job> jobs = readManifest(new File(args[0]));
+		outputDirectory.mkdirs();
+		new ExperimentRunner(outputDirectory).runAll(jobs, threads);
+	}
+}
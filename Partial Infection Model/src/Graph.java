@@ -6,6 +6,10 @@ public class Graph {
 	private int numVertices;
 	private int numEdges;
 	private int dayID;
+	private HashMap<String, Vertice> IDIndex;
+	private volatile int[] commIDs; //meta-graph only: parsed vertex IDs, by position
+	private volatile HashMap<Integer, Integer> commIndex; //meta-graph only: community ID to position
+	private volatile CSRGraph csr; //adjacency by position in vertices, built on first use
 	public Graph(ArrayList<Vertice> vertices, ArrayList<Edge> edgeList, int dayID)
 	{
 		this.dayID =dayID;
@@ -13,6 +17,10 @@ public class Graph {
 		this.vertices=vertices;
 		numVertices = vertices.size();
 		numEdges = edgeList.size();
+		IDIndex = new HashMap<>();
+		for(Vertice v: vertices)
+			if(v!=null)
+				IDIndex.put(v.getID(), v);
 	}
 	public int getNumVertices()
 	{
@@ -32,11 +40,66 @@ public class Graph {
 	}
 	public Vertice getVertex(String ID)
 	{
-		for(Vertice v: vertices)
-			if(v.getID().equals(ID))
-				return v;
-		System.out.println(ID);
-		return null;
+		Vertice v = IDIndex.get(ID);
+		if(v==null)
+			System.out.println(ID);
+		return v;
+	}
+
+	//For the community meta-graph, whose vertex IDs are integer community IDs. Both indices are built on first use,
+	//and only published once complete, so concurrent experiments can share the meta-graph.
+	private synchronized void indexCommIDs()
+	{
+		if(commIndex!=null)
+			return;
+		int[] IDs = new int[numVertices];
+		HashMap<Integer, Integer> index = new HashMap<>();
+		for(int i=0; i<numVertices; i++)
+		{
+			IDs[i]=Integer.parseInt(vertices.get(i).getID());
+			index.put(IDs[i], i);
+		}
+		commIDs=IDs;
+		commIndex=index;
+	}
+	public int getCommID(int position)
+	{
+		if(commIndex==null)
+			indexCommIDs();
+		return commIDs[position];
+	}
+	// position of the community in getVertices(), -1 if absent
+	public int getCommPosition(int commID)
+	{
+		if(commIndex==null)
+			indexCommIDs();
+		Integer position = commIndex.get(commID);
+		return position==null ? -1 : position;
+	}
+	public Vertice getCommVertex(int commID)
+	{
+		int position = getCommPosition(commID);
+		return position<0 ? null : vertices.get(position);
+	}
+	// position of v in getVertices(), -1 if absent
+	public int getPosition(Vertice v)
+	{
+		if(v.getIndex()>=0&&v.getIndex()<numVertices&&vertices.get(v.getIndex())==v)
+			return v.getIndex();
+		return vertices.indexOf(v);
+	}
+	// CSR adjacency where vertex i is getVertices().get(i). Built once; the graph must not change afterwards.
+	public CSRGraph getCSR()
+	{
+		if(csr==null)
+		{
+			synchronized(this)
+			{
+				if(csr==null)
+					csr=CSRGraph.fromGraph(this, vertices);
+			}
+		}
+		return csr;
 	}
 	public int getNumEdges()
 	{
@@ -0,0 +1,182 @@
+/* Builds the weekday and full contact graphs directly from course rosters.
+ *
+ * The student-course bipartite data is projected onto student pairs, with edge weight = hours of shared class time.
+ * Every (student pair, meeting) is packed into one primitive long and the array is sorted in parallel, so runs of
+ * equal pairs can be summed in a single scan without boxing or hashing.
+ *
+ * Packed layout: [ lower index : 21 bits ][ higher index : 21 bits ][ meeting minutes : 22 bits ]
+ *
+ * Also builds the community meta-graph from the contact graphs in one pass over their edges.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.stream.IntStream;
+
+public class GraphBuilder {
+
+	static final int indexBits=21;
+	static final int minuteBits=22;
+	static final long minuteMask=(1L<<minuteBits)-1;
+	static final int maxVertices=1<<indexBits;
+
+	// Builds one graph per weekday. Edges are registered on each vertex under that weekday's index.
+	public static Graph[] buildDayGraphs(ArrayList<Vertice> vertices, ArrayList<ArrayList<Course>> coursesPerDay)
+	{
+		Graph[] result = new Graph[coursesPerDay.size()];
+		for(int i=0; i<coursesPerDay.size(); i++)
+			result[i]=buildGraph(vertices, coursesPerDay.get(i), i, false);
+		return result;
+	}
+
+	// Builds the full graph G_F, weighted by shared class hours over the whole week. Edges are registered under day 0.
+	public static Graph buildFullGraph(ArrayList<Vertice> vertices, ArrayList<ArrayList<Course>> coursesPerDay)
+	{
+		ArrayList<Course> allMeetings = new ArrayList<>();
+		for(ArrayList<Course> cs: coursesPerDay)
+			allMeetings.addAll(cs);
+		return buildGraph(vertices, allMeetings, 0, true);
+	}
+
+	/*	Input:
+	 * 	vertices: every vertex that may appear in the graph
+	 * 	meetings: course meetings to project. A course listed twice contributes its duration twice.
+	 * 	day: index edges are stored under in each Vertice
+	 * 	keepAll: if true every vertex is kept in the graph, else only vertices attending at least one meeting
+	 */
+	public static Graph buildGraph(ArrayList<Vertice> vertices, ArrayList<Course> meetings, int day, boolean keepAll)
+	{
+		if(vertices.size()>maxVertices)
+			throw new IllegalArgumentException("GraphBuilder supports at most "+maxVertices+" vertices");
+
+		HashMap<Vertice, Integer> index = new HashMap<>();
+		for(int i=0; i<vertices.size(); i++)
+			index.put(vertices.get(i), i);
+
+		int[][] rosters = new int[meetings.size()][];
+		long[] offsets = new long[meetings.size()+1];
+		boolean[] present = new boolean[vertices.size()];
+		for(int c=0; c<meetings.size(); c++)
+		{
+			rosters[c]=getRoster(meetings.get(c), index);
+			for(int x: rosters[c])
+				present[x]=true;
+			offsets[c+1]=offsets[c]+(long)rosters[c].length*(rosters[c].length-1)/2;
+		}
+		if(offsets[meetings.size()]>Integer.MAX_VALUE-8)
+			throw new IllegalArgumentException("Too many student pairs to project: "+offsets[meetings.size()]);
+
+		long[] keys = new long[(int)offsets[meetings.size()]];
+		IntStream.range(0, meetings.size()).parallel().forEach(c -> {
+			long minutes = Math.round(meetings.get(c).getTime().getDuration()*60);
+			if(minutes<0||minutes>minuteMask)
+				throw new IllegalArgumentException("Invalid meeting duration for course "+meetings.get(c).getID());
+			int[] roster = rosters[c];
+			int pos = (int)offsets[c];
+			for(int i=0; i<roster.length; i++)
+				for(int j=i+1; j<roster.length; j++)
+					keys[pos++]=pack(roster[i], roster[j], minutes);
+		});
+		Arrays.parallelSort(keys);
+
+		ArrayList<Edge> edges = new ArrayList<>();
+		int i=0;
+		while(i<keys.length)
+		{
+			long pair = keys[i]>>>minuteBits;
+			long minutes = 0;
+			while(i<keys.length&&(keys[i]>>>minuteBits)==pair)
+				minutes+=keys[i++]&minuteMask;
+			Vertice v1 = vertices.get((int)(pair>>>indexBits));
+			Vertice v2 = vertices.get((int)(pair&(maxVertices-1)));
+			Edge e = new Edge(v1, v2, minutes/60.0);
+			edges.add(e);
+			v1.addEdge(day, e);
+			v2.addEdge(day, e);
+		}
+
+		ArrayList<Vertice> graphVertices = new ArrayList<>();
+		for(int x=0; x<vertices.size(); x++)
+			if(keepAll||present[x])
+				graphVertices.add(vertices.get(x));
+		return new Graph(graphVertices, edges, day);
+	}
+
+	// Sorted, duplicate-free indices of the students enrolled in c
+	private static int[] getRoster(Course c, HashMap<Vertice, Integer> index)
+	{
+		int[] roster = new int[c.getNumStudents()];
+		int size=0;
+		for(Vertice s: c.getStudents())
+		{
+			Integer x = index.get(s);
+			if(x!=null)
+				roster[size++]=x;
+		}
+		Arrays.sort(roster, 0, size);
+		int unique=0;
+		for(int i=0; i<size; i++)
+			if(unique==0||roster[unique-1]!=roster[i])
+				roster[unique++]=roster[i];
+		return Arrays.copyOf(roster, unique);
+	}
+
+	/*	Builds the community meta-graph, with one vertex per community (ID = community ID, ascending) and an edge of weight
+	 * 	= total contact weight between the two communities wherever it is non-zero. Edges are registered under day 0.
+	 * 	Input:
+	 * 	layers: contact graphs whose vertices carry their community in getCommID(). Weights are summed over all layers, so
+	 * 	the weekday graphs give the same meta-graph as G_F.
+	 * 	commMap: communities to include. Edges touching a vertex outside them, or inside one community, are skipped.
+	 */
+	public static Graph buildMetaGraph(Graph[] layers, HashMap<Integer, ArrayList<String>> commMap)
+	{
+		int[] commIDs = new int[commMap.size()];
+		int n=0;
+		for(Integer c: commMap.keySet())
+			commIDs[n++]=c;
+		Arrays.sort(commIDs);
+
+		// at most one entry per edge or per pair of communities, whichever is fewer, and the map grows past the cap if needed
+		long edges=0;
+		for(Graph G: layers)
+			edges+=G.getEdges().size();
+		LongDoubleMap weights = new LongDoubleMap((int)Math.min(Math.min(edges, (long)n*(n-1)/2), 1<<20));
+		int a;
+		int b;
+		for(Graph G: layers)
+		{
+			for(Edge e: G.getEdges())
+			{
+				a=Arrays.binarySearch(commIDs, e.getSource().getCommID());
+				b=Arrays.binarySearch(commIDs, e.getTarget().getCommID());
+				if(a<0||b<0||a==b)
+					continue;
+				weights.add(a<b ? (long)a<<32|b : (long)b<<32|a, e.getWeight());
+			}
+		}
+
+		ArrayList<Vertice> metaVertices = new ArrayList<>(n);
+		for(int c: commIDs)
+			metaVertices.add(new Vertice(String.valueOf(c), 1));
+		ArrayList<Edge> metaEdges = new ArrayList<>(weights.size());
+		Vertice v1;
+		Vertice v2;
+		Edge temp;
+		for(long key: weights.getKeys())
+		{
+			v1=metaVertices.get((int)(key>>>32));
+			v2=metaVertices.get((int)key);
+			temp = new Edge(v1, v2, weights.get(key));
+			metaEdges.add(temp);
+			v1.addEdge(0, temp);
+			v2.addEdge(0, temp);
+		}
+		return new Graph(metaVertices, metaEdges, 0);
+	}
+
+	private static long pack(int low, int high, long minutes)
+	{
+		return ((((long)low<<indexBits)|high)<<minuteBits)|minutes;
+	}
+}
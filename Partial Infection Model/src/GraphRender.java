@@ -1,11 +1,10 @@
 // Used to render simulations.
 //Currently allows for vaccination of vertices on click.
 import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Scanner;
 
 import javafx.scene.control.Button;
 import javafx.scene.control.ChoiceBox;
@@ -62,7 +61,8 @@ public class GraphRender extends Application{
 	static final double scaleFactor=6.5;
 	Group root;
 	HashMap<String, Vertice> IDmap;
-	HashMap<Vertice, Location> map;
+	double[] locX; //screen coordinates, indexed by Vertice.getIndex()
+	double[] locY;
 	ArrayList<Vertice> vertices;
 	ArrayList<Edge> edges;
 	HashMap<Integer, ArrayList<String>> commMap;
@@ -83,53 +83,56 @@ public class GraphRender extends Application{
 	public static void main(String[] args) {
 		launch(args);
 	}
-	public void setLocationMap() throws FileNotFoundException
+	public void setLocationMap() throws IOException
 	{
-		Scanner coordinates = new Scanner(new File(inputDirectory+"Coordinates.txt"));
-		map=Main.getLocations(coordinates, IDmap);
-		for(Vertice v: vertices)
-			map.put(v, new Location(map.get(v).x/scaleFactor+500,map.get(v).y/scaleFactor+20));
+		double[][] locations = Main.getLocations(new File(inputDirectory+"Coordinates.txt"), IDmap);
+		locX=locations[0];
+		locY=locations[1];
+		for(int i=0; i<locX.length; i++)
+		{
+			locX[i]=locX[i]/scaleFactor+500;
+			locY[i]=locY[i]/scaleFactor+20;
+		}
 	}
-	public void setSim() throws FileNotFoundException
+	public void setSim() throws IOException
 	{
-		Scanner IDs = new Scanner(new File("C:\\Users\\Billy\\Documents\\Simple Weighted Communities\\IDList.txt"));
+		MappedTokenizer IDs = new MappedTokenizer("C:\\Users\\Billy\\Documents\\Simple Weighted Communities\\IDList.txt");
 
 		// maps ID to vertices
-		IDmap= new HashMap<>();
-		String temp;
-		while(IDs.hasNextLine())
+		VertexDictionary dictionary = new VertexDictionary();
+		while(IDs.hasNext())
 		{
-			temp =IDs.next();
-			IDmap.put(temp, new Vertice(temp,5));
+			dictionary.add(IDs.next(),5);
 		}
 		IDs.close();
-		vertices = new ArrayList<>(IDmap.values());
-		Scanner c_FullD = new Scanner(new File(inputDirectory+"Full Graph Duration Communities.txt"));
+		IDmap = dictionary.toMap();
+		vertices = dictionary.getVertices();
+		MappedTokenizer c_FullD = new MappedTokenizer(inputDirectory+"Full Graph Duration Communities.txt");
 		commMap = CommunityAnalysis.getCommunities(c_FullD);
 		c_FullD.close();
 
-		Scanner nodeProperties = new Scanner(new File(inputDirectory+"Node Properties.txt"));
+		MappedTokenizer nodeProperties = new MappedTokenizer(inputDirectory+"Node Properties.txt");
 
-		Scanner v_Meta = new Scanner(new File(inputDirectory+"Meta ID List.txt"));
+		MappedTokenizer v_Meta = new MappedTokenizer(inputDirectory+"Meta ID List.txt");
 		PrintWriter pw = new PrintWriter("outfile.txt");
 		HashMap<String, Vertice> metaMap = new HashMap<String, Vertice>();
 
 		String metaTemp;
-		while(v_Meta.hasNextLine())
+		while(v_Meta.hasNext())
 		{
-			metaTemp =v_Meta.nextLine();
+			metaTemp =v_Meta.next();
 			metaMap.put(metaTemp, new Vertice((String)metaTemp, 1));
 		}
 		v_Meta.close();
-		v_Meta = new Scanner(new File(inputDirectory+"Meta ID List.txt"));
-		Scanner e_Meta = new Scanner(new File(inputDirectory+"Meta Edge List.txt"));
+		v_Meta = new MappedTokenizer(inputDirectory+"Meta ID List.txt");
+		MappedTokenizer e_Meta = new MappedTokenizer(inputDirectory+"Meta Edge List.txt");
 
 		Graph Meta = Main.getGraph(v_Meta, e_Meta, metaMap, 0);
 		v_Meta.close();
 		double[][] dist = Main.allPairsSP(Meta, pw);
 
-		Scanner courseList = new Scanner(new File(inputDirectory+"Courses.txt"));
-		Scanner courseTimes = new Scanner(new File(inputDirectory+"CourseTimes.txt"));
+		MappedTokenizer courseList = new MappedTokenizer(inputDirectory+"Courses.txt");
+		MappedTokenizer courseTimes = new MappedTokenizer(inputDirectory+"CourseTimes.txt");
 		ArrayList<Course> courses = Main.initCourses(IDmap,courseTimes,courseList);
 		ArrayList<ArrayList<Course>> coursesPerDay = new ArrayList<>();
 
@@ -147,7 +150,7 @@ public class GraphRender extends Application{
 
 		if(fullGraphMode) 
 		{
-			Scanner e_Full = new Scanner(new File("C:\\Users\\Billy\\Documents\\Simple Weighted Communities\\out_Alld.txt"));
+			MappedTokenizer e_Full = new MappedTokenizer("C:\\Users\\Billy\\Documents\\Simple Weighted Communities\\out_Alld.txt");
 			edges = Main.getEdges(e_Full, IDmap, 0);
 			Graph Full = new Graph(vertices,edges,0);
 			e_Full.close();
@@ -270,14 +273,14 @@ public class GraphRender extends Application{
 			for(Edge e: edges)
 			{
 				if(!e.getSource().getVaccinationState()&&!e.getTarget().getVaccinationState())
-				gc.strokeLine(map.get(e.getSource()).x, map.get(e.getSource()).y, map.get(e.getTarget()).x, map.get(e.getTarget()).y);
+				gc.strokeLine(locX[e.getSource().getIndex()], locY[e.getSource().getIndex()], locX[e.getTarget().getIndex()], locY[e.getTarget().getIndex()]);
 			}
 		}
 		else
 		{
 			for(Edge e: DS.getGraph(weekday).getEdges())
 			{
-				gc.strokeLine(map.get(e.getSource()).x, map.get(e.getSource()).y, map.get(e.getTarget()).x, map.get(e.getTarget()).y);
+				gc.strokeLine(locX[e.getSource().getIndex()], locY[e.getSource().getIndex()], locX[e.getTarget().getIndex()], locY[e.getTarget().getIndex()]);
 			}
 		}
 	}
@@ -302,8 +305,8 @@ public class GraphRender extends Application{
 			else
 				color=Color.rgb(255, (int)(255-255*v.getCumulation()), 0);
 			gc.setFill(color);
-			gc.fillOval(map.get(v).x-radius, map.get(v).y-radius, 2*radius, 2*radius);
-			gc.strokeOval(map.get(v).x-radius, map.get(v).y-radius, 2*radius, 2*radius);
+			gc.fillOval(locX[v.getIndex()]-radius, locY[v.getIndex()]-radius, 2*radius, 2*radius);
+			gc.strokeOval(locX[v.getIndex()]-radius, locY[v.getIndex()]-radius, 2*radius, 2*radius);
 		}
 	}
 	private void drawShapesDS(GraphicsContext gc)
@@ -328,8 +331,8 @@ public class GraphRender extends Application{
 			gc.setFill(color);
 			if(v.getEdges(weekday).size()!=0)
 			{
-				gc.fillOval(map.get(v).x-radius, map.get(v).y-radius, 2*radius, 2*radius);
-				gc.strokeOval(map.get(v).x-radius, map.get(v).y-radius, 2*radius, 2*radius);
+				gc.fillOval(locX[v.getIndex()]-radius, locY[v.getIndex()]-radius, 2*radius, 2*radius);
+				gc.strokeOval(locX[v.getIndex()]-radius, locY[v.getIndex()]-radius, 2*radius, 2*radius);
 			}
 		}
 	}
@@ -337,10 +340,10 @@ public class GraphRender extends Application{
 	{
 		double currentX;
 		double currentY;
-		for(Vertice v: map.keySet())
+		for(Vertice v: vertices)
 		{
-			currentX=map.get(v).x;
-			currentY=map.get(v).y;
+			currentX=locX[v.getIndex()];
+			currentY=locY[v.getIndex()];
 			if(currentX-radius<=x&&x<=currentX+radius&&currentY-radius<=y&&y<=currentY+radius)
 			{
 				return v;
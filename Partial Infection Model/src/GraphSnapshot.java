@@ -0,0 +1,388 @@
+/* Versioned binary snapshot of a loaded data set: ID dictionary, community IDs, contacts per day, centralities and the
+ * CSR adjacency of every graph layer (G_F, or the Monday-Friday graphs).
+ *
+ * The snapshot is written once after the text inputs are parsed, then memory-mapped read-only on later runs. Since the
+ * file is mapped rather than read, JVMs running experiments on the same data set share its pages.
+ *
+ * The header holds a fingerprint of the input files and parameters the data set was built from (Main.getInputFingerprint),
+ * so a snapshot that no longer matches its inputs can be detected and rebuilt. The edges of each layer are recreated in
+ * the order they were written, so the vertices' edge lists, and with them seeded Monte Carlo runs, match the run that
+ * parsed the text inputs.
+ *
+ * Layout (big-endian, every array section starts on an 8 byte boundary):
+ * 	header: magic, version, numVertices, numLayers, contactDays, numCentralities, byte[32] fingerprint
+ * 	ID dictionary: int[numVertices+1] byte offsets, then the ISO-8859-1 bytes of every ID
+ * 	int[numVertices] community IDs
+ * 	double[numVertices*contactDays] contacts per day
+ * 	double[numVertices*numCentralities] centralities
+ * 	per layer: dayID, numMembers, numArcs, numEdges, int[numMembers] members, int[numVertices+1] offsets, int[numArcs] targets,
+ * 	double[numArcs] weights, int[numEdges] arc of each edge in the row of its source, in edge list order
+ */
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+public class GraphSnapshot {
+	static final int magic=0x50494D53; //"PIMS"
+	static final int version=2;
+	static final int fingerprintSize=32;
+	static final int headerSize=24+fingerprintSize;
+	static final int noCommunity=-100; //community ID of vertices that were never assigned one
+
+	private MappedByteBuffer buffer;
+	private int numVertices;
+	private int numLayers;
+	private int contactDays;
+	private int numCentralities;
+	private byte[] fingerprint;
+
+	private IntBuffer idOffsets;
+	private long idBytes;
+	private IntBuffer commIDs;
+	private DoubleBuffer contacts;
+	private DoubleBuffer centralities;
+	private int[] layerDays;
+	private IntBuffer[] layerMembers;
+	private IntBuffer[] layerOffsets;
+	private IntBuffer[] layerTargets;
+	private DoubleBuffer[] layerWeights;
+	private IntBuffer[] layerEdges;
+	private CompactGraph[] compactLayers; //built on first use and shared, since simulations only read them
+
+	public GraphSnapshot(File file) throws IOException
+	{
+		try(RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel())
+		{
+			if(channel.size()>Integer.MAX_VALUE)
+				throw new IOException(file+" is too large to map ("+channel.size()+" bytes)");
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		if(buffer.limit()<headerSize||buffer.getInt(0)!=magic)
+			throw new IOException(file+" is not a graph snapshot");
+		if(buffer.getInt(4)!=version)
+			throw new IOException(file+" has snapshot version "+buffer.getInt(4)+", expected "+version);
+		numVertices=buffer.getInt(8);
+		numLayers=buffer.getInt(12);
+		contactDays=buffer.getInt(16);
+		numCentralities=buffer.getInt(20);
+		fingerprint = new byte[fingerprintSize];
+		ByteBuffer header = buffer.duplicate();
+		header.position(24);
+		header.get(fingerprint);
+
+		long pos=headerSize;
+		idOffsets=intView(pos, numVertices+1);
+		pos+=4L*(numVertices+1);
+		idBytes=pos;
+		pos=align(pos+idOffsets.get(numVertices));
+		commIDs=intView(pos, numVertices);
+		pos=align(pos+4L*numVertices);
+		contacts=doubleView(pos, numVertices*contactDays);
+		pos+=8L*numVertices*contactDays;
+		centralities=doubleView(pos, numVertices*numCentralities);
+		pos+=8L*numVertices*numCentralities;
+
+		layerDays=new int[numLayers];
+		layerMembers=new IntBuffer[numLayers];
+		layerOffsets=new IntBuffer[numLayers];
+		layerTargets=new IntBuffer[numLayers];
+		layerWeights=new DoubleBuffer[numLayers];
+		layerEdges=new IntBuffer[numLayers];
+		int numMembers;
+		int numArcs;
+		int numEdges;
+		for(int l=0; l<numLayers; l++)
+		{
+			layerDays[l]=buffer.getInt((int)pos);
+			numMembers=buffer.getInt((int)pos+4);
+			numArcs=buffer.getInt((int)pos+8);
+			numEdges=buffer.getInt((int)pos+12);
+			pos+=16;
+			layerMembers[l]=intView(pos, numMembers);
+			pos+=4L*numMembers;
+			layerOffsets[l]=intView(pos, numVertices+1);
+			pos+=4L*(numVertices+1);
+			layerTargets[l]=intView(pos, numArcs);
+			pos=align(pos+4L*numArcs);
+			layerWeights[l]=doubleView(pos, numArcs);
+			pos+=8L*numArcs;
+			layerEdges[l]=intView(pos, numEdges);
+			pos=align(pos+4L*numEdges);
+		}
+		if(pos!=buffer.limit())
+			throw new IOException(file+" is truncated or corrupt");
+	}
+
+	private static long align(long pos)
+	{
+		return (pos+7)&~7L;
+	}
+	private ByteBuffer region(long pos, long length) throws IOException
+	{
+		if(pos+length>buffer.limit())
+			throw new IOException("Snapshot is truncated");
+		ByteBuffer b = buffer.duplicate();
+		b.position((int)pos);
+		b.limit((int)(pos+length));
+		return b.slice();
+	}
+	private IntBuffer intView(long pos, int count) throws IOException
+	{
+		return region(pos, 4L*count).asIntBuffer();
+	}
+	private DoubleBuffer doubleView(long pos, int count) throws IOException
+	{
+		return region(pos, 8L*count).asDoubleBuffer();
+	}
+
+	public int getNumVertices()
+	{
+		return numVertices;
+	}
+	public int getNumLayers()
+	{
+		return numLayers;
+	}
+	public String getID(int v)
+	{
+		int start = idOffsets.get(v);
+		byte[] bytes = new byte[idOffsets.get(v+1)-start];
+		ByteBuffer b = buffer.duplicate();
+		b.position((int)idBytes+start);
+		b.get(bytes);
+		return new String(bytes, StandardCharsets.ISO_8859_1);
+	}
+	public int getCommID(int v)
+	{
+		return commIDs.get(v);
+	}
+	public double getContacts(int v, int day)
+	{
+		return contacts.get(v*contactDays+day);
+	}
+	public double getCentrality(int v, int index)
+	{
+		return centralities.get(v*numCentralities+index);
+	}
+	// Main.getInputFingerprint of the inputs the snapshot was written from
+	public byte[] getFingerprint()
+	{
+		return fingerprint.clone();
+	}
+	public int getLayerDay(int layer)
+	{
+		return layerDays[layer];
+	}
+
+	// Copies one layer out of the mapping into heap arrays.
+	public CSRGraph getLayer(int layer)
+	{
+		int[] offsets = new int[numVertices+1];
+		int[] targets = new int[layerTargets[layer].limit()];
+		double[] weights = new double[targets.length];
+		layerOffsets[layer].duplicate().get(offsets);
+		layerTargets[layer].duplicate().get(targets);
+		layerWeights[layer].duplicate().get(weights);
+		return new CSRGraph(offsets, targets, weights);
+	}
+	// One layer as a CompactGraph, for StaticSimulation(CompactGraph, ...) on the vertices of createVertices
+	public synchronized CompactGraph getCompactLayer(int layer)
+	{
+		if(compactLayers==null)
+			compactLayers = new CompactGraph[numLayers];
+		if(compactLayers[layer]==null)
+			compactLayers[layer]=CompactGraph.fromCSR(getLayer(layer));
+		return compactLayers[layer];
+	}
+
+	// Creates Vertice objects in snapshot order, with community IDs, centralities and contacts per day filled in.
+	// The position of each vertex in the snapshot becomes its interned index.
+	public ArrayList<Vertice> createVertices(int numWeekdays)
+	{
+		ArrayList<Vertice> result = new ArrayList<>(numVertices);
+		Vertice v;
+		for(int i=0; i<numVertices; i++)
+		{
+			v = new Vertice(getID(i), i, numWeekdays);
+			v.setCommID(commIDs.get(i));
+			for(int c=0; c<numCentralities; c++)
+				v.centralities.add(getCentrality(i, c));
+			for(int d=0; d<contactDays; d++)
+				v.getContactsPerDay().add(getContacts(i, d));
+			v.setRoundedContacts();
+			result.add(v);
+		}
+		return result;
+	}
+
+	// Rebuilds Edge objects for every layer, in the original edge order. vertices must be the list returned by createVertices.
+	public Graph[] createGraphs(ArrayList<Vertice> vertices)
+	{
+		Graph[] result = new Graph[numLayers];
+		for(int l=0; l<numLayers; l++)
+		{
+			ArrayList<Vertice> members = new ArrayList<>();
+			for(int i=0; i<layerMembers[l].limit(); i++)
+				members.add(vertices.get(layerMembers[l].get(i)));
+			ArrayList<Edge> edges = new ArrayList<>(layerEdges[l].limit());
+			int day = layerDays[l];
+			int a;
+			int source;
+			Edge e;
+			for(int j=0; j<layerEdges[l].limit(); j++)
+			{
+				a=layerEdges[l].get(j);
+				source=getRow(layerOffsets[l], a);
+				e = new Edge(vertices.get(source), vertices.get(layerTargets[l].get(a)), layerWeights[l].get(a));
+				edges.add(e);
+				e.getSource().addEdge(day, e);
+				e.getTarget().addEdge(day, e);
+			}
+			result[l]=new Graph(members, edges, day);
+		}
+		return result;
+	}
+	// Row of arc a: the last vertex whose offset is at most a
+	private int getRow(IntBuffer offsets, int a)
+	{
+		int low=0;
+		int high=numVertices-1;
+		int mid;
+		while(low<high)
+		{
+			mid=(low+high+1)>>>1;
+			if(offsets.get(mid)<=a)
+				low=mid;
+			else
+				high=mid-1;
+		}
+		return low;
+	}
+
+	public HashMap<Integer, ArrayList<String>> getCommMap()
+	{
+		HashMap<Integer, ArrayList<String>> result = new HashMap<>();
+		int comm;
+		for(int i=0; i<numVertices; i++)
+		{
+			comm = commIDs.get(i);
+			if(comm==noCommunity)
+				continue;
+			if(!result.containsKey(comm))
+				result.put(comm, new ArrayList<>());
+			result.get(comm).add(getID(i));
+		}
+		return result;
+	}
+
+	/*	Input:
+	 * 	file: destination of the snapshot
+	 * 	vertices: every vertex, in VertexDictionary order
+	 * 	layers: graphs to store, e.g. {G_F} or the five weekday graphs
+	 * 	numCentralities: number of centralities stored per vertex
+	 * 	fingerprint: Main.getInputFingerprint of the inputs, fingerprintSize bytes
+	 */
+	public static void write(File file, ArrayList<Vertice> vertices, Graph[] layers, int numCentralities, byte[] fingerprint) throws IOException
+	{
+		if(fingerprint.length!=fingerprintSize)
+			throw new IllegalArgumentException("Fingerprint must have "+fingerprintSize+" bytes");
+		int n = vertices.size();
+		int contactDays = n==0 ? 0 : vertices.get(0).getContactsPerDay().size();
+		if(!VertexDictionary.isIndexed(vertices))
+			throw new IllegalArgumentException("Snapshot vertices must be in VertexDictionary order");
+
+		try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1<<16)))
+		{
+			long pos=0;
+			out.writeInt(magic);
+			out.writeInt(version);
+			out.writeInt(n);
+			out.writeInt(layers.length);
+			out.writeInt(contactDays);
+			out.writeInt(numCentralities);
+			out.write(fingerprint);
+			pos+=headerSize;
+
+			byte[][] ids = new byte[n][];
+			int total=0;
+			out.writeInt(0);
+			for(int i=0; i<n; i++)
+			{
+				ids[i]=vertices.get(i).getID().getBytes(StandardCharsets.ISO_8859_1);
+				total+=ids[i].length;
+				out.writeInt(total);
+			}
+			for(byte[] id: ids)
+				out.write(id);
+			pos=pad(out, pos+4L*(n+1)+total);
+
+			for(Vertice v: vertices)
+				out.writeInt(v.getCommID());
+			pos=pad(out, pos+4L*n);
+			for(Vertice v: vertices)
+			{
+				if(v.getContactsPerDay().size()!=contactDays)
+					throw new IllegalArgumentException("Vertex "+v.getID()+" has "+v.getContactsPerDay().size()+" contact days, expected "+contactDays);
+				for(Double d: v.getContactsPerDay())
+					out.writeDouble(d);
+			}
+			for(Vertice v: vertices)
+			{
+				for(int c=0; c<numCentralities; c++)
+					out.writeDouble(v.centralities.size()>c ? v.centralities.get(c) : 0);
+			}
+			pos+=8L*n*(contactDays+numCentralities);
+
+			for(Graph G: layers)
+			{
+				CSRGraph csr = CSRGraph.fromGraph(G, vertices);
+				// fromGraph places the arcs of each row in edge list order, source arc first for self loops
+				int[] fill = new int[n];
+				int[] edgeArcs = new int[G.getEdges().size()];
+				int source;
+				for(int j=0; j<edgeArcs.length; j++)
+				{
+					source=G.getEdges().get(j).getSource().getIndex();
+					edgeArcs[j]=csr.getOffsets()[source]+fill[source]++;
+					fill[G.getEdges().get(j).getTarget().getIndex()]++;
+				}
+				out.writeInt(G.getDayID());
+				out.writeInt(G.getVertices().size());
+				out.writeInt(csr.getNumArcs());
+				out.writeInt(edgeArcs.length);
+				for(Vertice v: G.getVertices())
+					out.writeInt(v.getIndex());
+				for(int x: csr.getOffsets())
+					out.writeInt(x);
+				for(int x: csr.getTargets())
+					out.writeInt(x);
+				pos=pad(out, pos+16+4L*(G.getVertices().size()+n+1+csr.getNumArcs()));
+				for(double w: csr.getWeights())
+					out.writeDouble(w);
+				pos+=8L*csr.getNumArcs();
+				for(int arc: edgeArcs)
+					out.writeInt(arc);
+				pos=pad(out, pos+4L*edgeArcs.length);
+			}
+		}
+	}
+	private static long pad(DataOutputStream out, long pos) throws IOException
+	{
+		long aligned = align(pos);
+		for(long i=pos; i<aligned; i++)
+			out.writeByte(0);
+		return aligned;
+	}
+}
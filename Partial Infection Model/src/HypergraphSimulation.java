@@ -0,0 +1,96 @@
+/* Meeting-level simulation that works on the Course -> students incidence lists without projecting each course onto a clique.
+ *
+ * For each meeting the infection pressure of all members is aggregated once. Every member then receives the aggregate
+ * with its own contribution divided back out, so a day costs O(total enrollments) instead of O(sum of k^2) over sections.
+ * The stochastic model gives the same expected dynamics as MeetingSimulation, which it extends. The deterministic one uses
+ * each member's cumulation without the backflow correction, which depends on the pair and so cannot be aggregated, i.e.
+ * the kernel StaticSimulation.trickle has with its correction commented out.
+ */
+
+import java.util.ArrayList;
+
+
+public class HypergraphSimulation extends MeetingSimulation {
+	private double[] ownTerm; //reused per-meeting buffer of each member's log contribution
+
+	public HypergraphSimulation(ArrayList<ArrayList<Course>> coursesPerDay, ArrayList<Vertice> vertices, double tProbability, double contactsPerHour, int latentPd, int infectiousPd)
+	{
+		super(coursesPerDay, vertices, tProbability, contactsPerHour, latentPd, infectiousPd);
+		ownTerm = new double[0];
+	}
+
+	//Stochastic meeting. A susceptible student escapes its own contacts with infected classmates, and the contacts infected classmates make with it.
+	@Override
+	public void runMeeting(Course c)
+	{
+		ArrayList<Vertice> students = c.getStudents();
+		int k = students.size();
+		if(k<2)
+			return;
+		int infected=0;
+		for(Vertice v: students)
+			if(v.getState()==Vertice.HealthState.infected)
+				infected++;
+		if(infected==0)
+			return;
+		int contacts = (int)Math.round(getMeetingContacts(c));
+		double perContact = getTransmissionProbability()/(k-1);
+		double escape = Math.pow(1-perContact*infected, contacts)*Math.pow(1-perContact, (double)infected*contacts);
+		for(Vertice v: students)
+		{
+			if(v.getState()==Vertice.HealthState.susceptible&&Main.RNG.get().nextDouble()>=escape)
+			{
+				v.setState(Vertice.HealthState.exposed);
+				v.setDaysSinceExposed(0);
+			}
+		}
+	}
+
+	//Deterministic meeting. Log-probabilities of not being infected are summed over members, then each member's own term is removed.
+	@Override
+	public void runTrickleMeeting(Course c)
+	{
+		ArrayList<Vertice> students = c.getStudents();
+		int k = students.size();
+		if(k<2)
+			return;
+		if(ownTerm.length<k)
+			ownTerm = new double[k];
+		double contacts = getMeetingContacts(c);
+		double perContact = getTransmissionProbability()/(k-1);
+		double logSum=0;
+		int certain=0; //members whose contacts are certain to infect, log(0) is kept out of the sum
+		boolean active=false;
+		double factor;
+		for(int i=0; i<k; i++)
+		{
+			factor = 1-students.get(i).getCumulation()*perContact;
+			if(factor<=0)
+			{
+				ownTerm[i]=Double.NEGATIVE_INFINITY;
+				certain++;
+				active=true;
+			}
+			else
+			{
+				ownTerm[i]=contacts*Math.log(factor);
+				logSum+=ownTerm[i];
+				if(ownTerm[i]!=0)
+					active=true;
+			}
+		}
+		if(!active)
+			return;
+		double received;
+		for(int i=0; i<k; i++)
+		{
+			if(ownTerm[i]==Double.NEGATIVE_INFINITY)
+				received = certain>1 ? 1 : 1-Math.exp(logSum);
+			else
+				received = certain>0 ? 1 : 1-Math.exp(logSum-ownTerm[i]);
+			if(received<0)
+				received=0;
+			students.get(i).compoundAggregate(received);
+		}
+	}
+}
@@ -0,0 +1,258 @@
+/* Minimal pull-based JSON reader over a memory-mapped file.
+ *
+ * Tokens are returned one at a time without building a document tree. Structure is not validated, so fragments of a
+ * larger JSON document (such as the node list exported from Cytoscape in Coordinates.txt) can be read as well.
+ * A string followed by ':' is returned as NAME; commas and colons are consumed silently. Strings are decoded as UTF-8.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+public class JsonPullParser {
+	public enum Token
+	{
+		startObject,
+		endObject,
+		startArray,
+		endArray,
+		name,
+		string,
+		number,
+		literal, //true, false or null
+		end
+	}
+
+	private MappedByteBuffer buffer;
+	private int limit;
+	private int pos;
+	private StringBuilder text;
+	private double number;
+
+	public JsonPullParser(File file) throws IOException
+	{
+		try(RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel())
+		{
+			if(channel.size()>Integer.MAX_VALUE)
+				throw new IOException(file+" is too large to map ("+channel.size()+" bytes)");
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		limit = buffer.limit();
+		pos = 0;
+		text = new StringBuilder();
+	}
+
+	private void skipSeparators()
+	{
+		byte b;
+		while(pos<limit)
+		{
+			b=buffer.get(pos);
+			if(b==' '||b=='\t'||b=='\r'||b=='\n'||b==','||b==':')
+				pos++;
+			else
+				return;
+		}
+	}
+
+	public Token next()
+	{
+		skipSeparators();
+		if(pos>=limit)
+			return Token.end;
+		byte b = buffer.get(pos);
+		switch(b)
+		{
+		case '{':
+			pos++;
+			return Token.startObject;
+		case '}':
+			pos++;
+			return Token.endObject;
+		case '[':
+			pos++;
+			return Token.startArray;
+		case ']':
+			pos++;
+			return Token.endArray;
+		case '"':
+			readString();
+			int after=pos;
+			while(after<limit&&(buffer.get(after)==' '||buffer.get(after)=='\t'||buffer.get(after)=='\r'||buffer.get(after)=='\n'))
+				after++;
+			if(after<limit&&buffer.get(after)==':')
+			{
+				pos=after+1;
+				return Token.name;
+			}
+			return Token.string;
+		default:
+			if(b=='-'||(b>='0'&&b<='9'))
+			{
+				readNumber();
+				return Token.number;
+			}
+			readLiteral();
+			return Token.literal;
+		}
+	}
+
+	// text of the last name, string or literal
+	public String getString()
+	{
+		return text.toString();
+	}
+	// true if the last name or string equals s, without creating a String
+	public boolean isString(String s)
+	{
+		if(text.length()!=s.length())
+			return false;
+		for(int i=0; i<s.length(); i++)
+			if(text.charAt(i)!=s.charAt(i))
+				return false;
+		return true;
+	}
+	public double getNumber()
+	{
+		return number;
+	}
+
+	// skips the value following a name, including any nested objects or arrays
+	public void skipValue()
+	{
+		int depth=0;
+		Token t;
+		do
+		{
+			t=next();
+			if(t==Token.startObject||t==Token.startArray)
+				depth++;
+			else if(t==Token.endObject||t==Token.endArray)
+				depth--;
+		}
+		while(depth>0&&t!=Token.end);
+	}
+
+	private void readString()
+	{
+		text.setLength(0);
+		pos++; //opening quote
+		byte b;
+		while(pos<limit)
+		{
+			b=buffer.get(pos++);
+			if(b=='"')
+				return;
+			if(b<0)
+			{
+				readMultiByte(b);
+				continue;
+			}
+			if(b!='\\')
+			{
+				text.append((char)b);
+				continue;
+			}
+			if(pos>=limit)
+				break;
+			b=buffer.get(pos++);
+			switch(b)
+			{
+			case 'b': text.append('\b'); break;
+			case 'f': text.append('\f'); break;
+			case 'n': text.append('\n'); break;
+			case 'r': text.append('\r'); break;
+			case 't': text.append('\t'); break;
+			case 'u':
+				if(pos+4>limit)
+					throw new IllegalStateException("Truncated escape at byte "+pos);
+				byte[] hex = new byte[4];
+				for(int i=0; i<4; i++)
+					hex[i]=buffer.get(pos++);
+				text.append((char)Integer.parseInt(new String(hex, StandardCharsets.ISO_8859_1), 16));
+				break;
+			default: text.append((char)(b&0xFF));
+			}
+		}
+		throw new IllegalStateException("Unterminated string at byte "+pos);
+	}
+	// Appends the character whose UTF-8 encoding starts with lead, or U+FFFD if the sequence is malformed
+	private void readMultiByte(byte lead)
+	{
+		int length;
+		int codePoint;
+		if((lead&0xE0)==0xC0)
+		{
+			length=1;
+			codePoint=lead&0x1F;
+		}
+		else if((lead&0xF0)==0xE0)
+		{
+			length=2;
+			codePoint=lead&0x0F;
+		}
+		else if((lead&0xF8)==0xF0)
+		{
+			length=3;
+			codePoint=lead&0x07;
+		}
+		else
+		{
+			text.append('\uFFFD');
+			return;
+		}
+		byte b;
+		for(int i=0; i<length; i++)
+		{
+			if(pos>=limit||((b=buffer.get(pos))&0xC0)!=0x80)
+			{
+				text.append('\uFFFD');
+				return;
+			}
+			codePoint=codePoint<<6|(b&0x3F);
+			pos++;
+		}
+		if(Character.isValidCodePoint(codePoint))
+			text.appendCodePoint(codePoint);
+		else
+			text.append('\uFFFD');
+	}
+	private void readNumber()
+	{
+		text.setLength(0);
+		byte b;
+		while(pos<limit)
+		{
+			b=buffer.get(pos);
+			if((b>='0'&&b<='9')||b=='-'||b=='+'||b=='.'||b=='e'||b=='E')
+			{
+				text.append((char)b);
+				pos++;
+			}
+			else
+				break;
+		}
+		number=Double.parseDouble(text.toString());
+	}
+	private void readLiteral()
+	{
+		text.setLength(0);
+		byte b;
+		while(pos<limit)
+		{
+			b=buffer.get(pos);
+			if(b>='a'&&b<='z')
+			{
+				text.append((char)b);
+				pos++;
+			}
+			else
+				break;
+		}
+		if(text.length()==0)
+			throw new IllegalStateException("Unexpected character '"+(char)buffer.get(pos)+"' at byte "+pos);
+	}
+}
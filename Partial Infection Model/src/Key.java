@@ -35,7 +35,11 @@ public class Key {
 
 	@Override
 	public int hashCode() {
-		return x.getID().hashCode()+y.getID().hashCode();
+		int a = x.getIndex();
+		int b = y.getIndex();
+		if(a<0||b<0) //not interned, fall back to identity since equals() compares references
+			return System.identityHashCode(x)^System.identityHashCode(y);
+		return Math.min(a, b)*31+Math.max(a, b);
 	}
 
 }
\ No newline at end of file
@@ -1,13 +0,0 @@
-/* Used in simulation rendering. 
- * 
- */
-
-public class Location {
-	public double x;
-	public double y;
-	public Location(double x, double y)
-	{
-		this.x=x;
-		this.y=y;
-	}
-}
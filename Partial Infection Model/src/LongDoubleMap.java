@@ -0,0 +1,112 @@
+/* Open addressing hash map from long keys to double values, with linear probing on primitive arrays.
+ *
+ * Meant for accumulating weights over packed pairs of indices without boxing a Long and a Double per update.
+ * Keys may be any long except emptyKey.
+ */
+
+import java.util.Arrays;
+
+public class LongDoubleMap {
+	static final long emptyKey=Long.MIN_VALUE;
+	static final int maxCapacity=1<<30; //largest power of two an array can hold
+
+	private long[] keys;
+	private double[] values;
+	private int size;
+	private int mask;
+
+	// expectedSize only sets the initial capacity, the map grows as needed
+	public LongDoubleMap(int expectedSize)
+	{
+		if(expectedSize<0||expectedSize>maxCapacity/2)
+			throw new IllegalArgumentException("Expected size "+expectedSize+" is outside 0.."+maxCapacity/2);
+		int capacity=16;
+		while(capacity<expectedSize*2)
+			capacity<<=1;
+		allocate(capacity);
+	}
+
+	private void allocate(int capacity)
+	{
+		keys = new long[capacity];
+		values = new double[capacity];
+		Arrays.fill(keys, emptyKey);
+		mask=capacity-1;
+		size=0;
+	}
+
+	private int slot(long key)
+	{
+		// spread the bits, packed pairs differ mostly in the low bits of each half
+		long h = key*0x9E3779B97F4A7C15L;
+		int i = (int)(h^(h>>>32))&mask;
+		while(keys[i]!=emptyKey&&keys[i]!=key)
+			i=(i+1)&mask;
+		return i;
+	}
+
+	// Adds delta to the value of key, which starts at 0
+	public void add(long key, double delta)
+	{
+		if(key==emptyKey)
+			throw new IllegalArgumentException("Key "+key+" is reserved");
+		int i = slot(key);
+		if(keys[i]==emptyKey)
+		{
+			keys[i]=key;
+			size++;
+			if(size*2>keys.length)
+			{
+				rehash();
+				i=slot(key);
+			}
+		}
+		values[i]+=delta;
+	}
+
+	// 0 if key is absent
+	public double get(long key)
+	{
+		int i = slot(key);
+		return keys[i]==emptyKey ? 0 : values[i];
+	}
+	public boolean containsKey(long key)
+	{
+		return keys[slot(key)]!=emptyKey;
+	}
+	public int size()
+	{
+		return size;
+	}
+
+	// The keys present, in ascending order
+	public long[] getKeys()
+	{
+		long[] result = new long[size];
+		int j=0;
+		for(long k: keys)
+			if(k!=emptyKey)
+				result[j++]=k;
+		Arrays.sort(result);
+		return result;
+	}
+
+	private void rehash()
+	{
+		if(keys.length==maxCapacity)
+			throw new IllegalStateException("LongDoubleMap cannot hold more than "+maxCapacity/2+" keys");
+		long[] oldKeys = keys;
+		double[] oldValues = values;
+		allocate(oldKeys.length*2);
+		int i;
+		for(int j=0; j<oldKeys.length; j++)
+		{
+			if(oldKeys[j]==emptyKey)
+				continue;
+			i=slot(oldKeys[j]);
+			keys[i]=oldKeys[j];
+			values[i]=oldValues[j];
+			size++;
+		}
+	}
+}
@@ -0,0 +1,294 @@
+/* Louvain community detection on weighted contact graphs, replacing the ModuLand communities exported from Cytoscape.
+ *
+ * Each level moves vertices between neighboring communities while modularity improves, then collapses every community
+ * into one vertex of the next level's graph. Moves are chosen in parallel for a batch of vertices against the state at the
+ * start of the batch, then applied one at a time, each only if it still improves modularity under the current state. The
+ * result is therefore the same for any number of threads, and modularity never decreases. After the first pass only
+ * vertices with a neighbor that moved away from them, or whose move was dropped, are reconsidered.
+ *
+ * Vertices without any contact are not assigned to a community and get the ID -1, like the unassigned vertices in the
+ * ModuLand output. The other communities are numbered from 0 by decreasing size.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.stream.IntStream;
+
+public class Louvain {
+	static final int batchSize=4096;
+	static final int maxPasses=32; //local moving passes per level
+	static final double minPassGain=1e-6; //modularity gained by a pass below which a level stops moving vertices
+
+	private CSRGraph graph;
+	private Modularity state; //current partition of graph, starting from one community per vertex
+
+	private Louvain(CSRGraph graph, double resolution)
+	{
+		this.graph=graph;
+		int[] singletons = new int[graph.getNumVertices()];
+		for(int v=0; v<singletons.length; v++)
+			singletons[v]=v;
+		state = new Modularity(graph, singletons, true, resolution);
+	}
+
+	/*	Detects the communities of the union of layers, with edge weights summed, so the weekday graphs give the
+	 * 	communities of G_F.
+	 * 	Input:
+	 * 	vertices: vertices to assign, in output order
+	 * 	resolution: 1 for standard modularity, higher for smaller communities
+	 * 	Returns the commMap format of CommunityAnalysis.getCommunities: community ID to the IDs of its vertices.
+	 */
+	public static HashMap<Integer, ArrayList<String>> detectCommunities(ArrayList<Vertice> vertices, Graph[] layers, double resolution)
+	{
+		int[] communities = detect(CSRGraph.sumLayers(layers, vertices), resolution);
+		HashMap<Integer, ArrayList<String>> result = new HashMap<>();
+		for(int v=0; v<vertices.size(); v++)
+			result.computeIfAbsent(communities[v], c -> new ArrayList<>()).add(vertices.get(v).getID());
+		return result;
+	}
+
+	// Community of each vertex of graph, -1 for vertices without edges
+	public static int[] detect(CSRGraph graph, double resolution)
+	{
+		int n = graph.getNumVertices();
+		int[] membership = new int[n];
+		for(int v=0; v<n; v++)
+			membership[v]=v;
+		CSRGraph level = graph;
+		Louvain louvain;
+		int[] dense;
+		int count;
+		while(true)
+		{
+			louvain = new Louvain(level, resolution);
+			if(louvain.moveVertices()==0)
+				break;
+			dense = new int[level.getNumVertices()];
+			count=louvain.renumber(dense);
+			for(int v=0; v<n; v++)
+				membership[v]=dense[membership[v]];
+			level=louvain.aggregate(dense, count);
+		}
+		return orderBySize(graph, membership);
+	}
+
+	// Local moving until a pass stops improving modularity. Returns the number of moves.
+	private int moveVertices()
+	{
+		int n = graph.getNumVertices();
+		ThreadLocal<Neighborhood> neighborhoods = ThreadLocal.withInitial(() -> new Neighborhood(n));
+		int[] proposals = new int[Math.min(batchSize, n)];
+		boolean[] active = new boolean[n];
+		Arrays.fill(active, true);
+		int[] offsets = graph.getOffsets();
+		int[] targets = graph.getTargets();
+		int total=0;
+		int moved;
+		double gained;
+		for(int pass=0; pass<maxPasses; pass++)
+		{
+			moved=0;
+			gained=0;
+			for(int start=0; start<n; start+=batchSize)
+			{
+				final int first=start;
+				int end = Math.min(n, start+batchSize);
+				IntStream.range(first, end).parallel().forEach(v -> proposals[v-first] = active[v] ? neighborhoods.get().bestCommunity(v) : state.getCommunity(v));
+				for(int v=first; v<end; v++)
+				{
+					if(proposals[v-first]==state.getCommunity(v))
+					{
+						active[v]=false;
+						continue;
+					}
+					// a proposal made stale by an earlier move in the batch is dropped, and v stays active
+					if(state.gain(v, proposals[v-first])>0)
+					{
+						active[v]=false;
+						gained+=state.move(v, proposals[v-first]);
+						moved++;
+						for(int a=offsets[v]; a<offsets[v+1]; a++)
+							if(state.getCommunity(targets[a])!=proposals[v-first])
+								active[targets[a]]=true;
+					}
+				}
+			}
+			total+=moved;
+			if(moved==0||gained<minPassGain)
+				break;
+		}
+		return total;
+	}
+
+	// Scratch space of one thread: weight from the current vertex to each neighboring community
+	private class Neighborhood
+	{
+		private double[] weightTo;
+		private int[] stamp; //generation in which weightTo was last reset, per community
+		private int generation;
+		private int[] touched;
+
+		Neighborhood(int n)
+		{
+			weightTo = new double[n];
+			stamp = new int[n];
+			touched = new int[n];
+		}
+
+		// Community maximizing the modularity of v's placement, its own community unless another is strictly better
+		int bestCommunity(int v)
+		{
+			int[] offsets = graph.getOffsets();
+			int[] targets = graph.getTargets();
+			double[] weights = graph.getWeights();
+			int own = state.getCommunity(v);
+			int size=0;
+			int c;
+			generation++;
+			for(int a=offsets[v]; a<offsets[v+1]; a++)
+			{
+				if(targets[a]==v)
+					continue;
+				c=state.getCommunity(targets[a]);
+				if(stamp[c]!=generation)
+				{
+					stamp[c]=generation;
+					weightTo[c]=0;
+					touched[size++]=c;
+				}
+				weightTo[c]+=weights[a];
+			}
+			double scale = state.getResolution()*state.getDegree(v)/state.getTotalWeight();
+			int best=own;
+			double bestScore = (stamp[own]==generation ? weightTo[own] : 0)-scale*(state.getCommunityDegree(own)-state.getDegree(v));
+			double score;
+			for(int i=0; i<size; i++)
+			{
+				c=touched[i];
+				if(c==own)
+					continue;
+				score=weightTo[c]-scale*state.getCommunityDegree(c);
+				if(score>bestScore||(score==bestScore&&best!=own&&c<best))
+				{
+					best=c;
+					bestScore=score;
+				}
+			}
+			return best;
+		}
+	}
+
+	// Fills dense with consecutive community numbers in order of first appearance. Returns the number of communities.
+	private int renumber(int[] dense)
+	{
+		int[] number = new int[state.getNumCommunities()];
+		Arrays.fill(number, -1);
+		int count=0;
+		int c;
+		for(int v=0; v<dense.length; v++)
+		{
+			c=state.getCommunity(v);
+			if(number[c]<0)
+				number[c]=count++;
+			dense[v]=number[c];
+		}
+		return count;
+	}
+
+	// Graph with one vertex per community. Edges inside a community become a self loop holding both directions.
+	private CSRGraph aggregate(int[] dense, int count)
+	{
+		int n = graph.getNumVertices();
+		int[] start = new int[count+1];
+		for(int v=0; v<n; v++)
+			start[dense[v]+1]++;
+		for(int c=0; c<count; c++)
+			start[c+1]+=start[c];
+		int[] members = new int[n];
+		int[] fill = start.clone();
+		for(int v=0; v<n; v++)
+			members[fill[dense[v]]++]=v;
+
+		int[] offsets = graph.getOffsets();
+		int[] targets = graph.getTargets();
+		double[] weights = graph.getWeights();
+		int[][] rowTargets = new int[count][];
+		double[][] rowWeights = new double[count][];
+		ThreadLocal<Neighborhood> rows = ThreadLocal.withInitial(() -> new Neighborhood(count));
+		IntStream.range(0, count).parallel().forEach(c -> {
+			Neighborhood row = rows.get();
+			int size=0;
+			int d;
+			row.generation++;
+			for(int m=start[c]; m<start[c+1]; m++)
+			{
+				for(int a=offsets[members[m]]; a<offsets[members[m]+1]; a++)
+				{
+					d=dense[targets[a]];
+					if(row.stamp[d]!=row.generation)
+					{
+						row.stamp[d]=row.generation;
+						row.weightTo[d]=0;
+						row.touched[size++]=d;
+					}
+					row.weightTo[d]+=weights[a];
+				}
+			}
+			rowTargets[c]=Arrays.copyOf(row.touched, size);
+			rowWeights[c] = new double[size];
+			for(int i=0; i<size; i++)
+				rowWeights[c][i]=row.weightTo[row.touched[i]];
+		});
+
+		int[] newOffsets = new int[count+1];
+		for(int c=0; c<count; c++)
+			newOffsets[c+1]=newOffsets[c]+rowTargets[c].length;
+		int[] newTargets = new int[newOffsets[count]];
+		double[] newWeights = new double[newOffsets[count]];
+		for(int c=0; c<count; c++)
+		{
+			System.arraycopy(rowTargets[c], 0, newTargets, newOffsets[c], rowTargets[c].length);
+			System.arraycopy(rowWeights[c], 0, newWeights, newOffsets[c], rowWeights[c].length);
+		}
+		return new CSRGraph(newOffsets, newTargets, newWeights);
+	}
+
+	// Final IDs: -1 for vertices without edges, then 0, 1, ... by decreasing size, ties by first member
+	private static int[] orderBySize(CSRGraph graph, int[] membership)
+	{
+		int n = graph.getNumVertices();
+		int[] size = new int[n];
+		int[] first = new int[n];
+		Arrays.fill(first, -1);
+		for(int v=0; v<n; v++)
+		{
+			if(graph.getDegree(v)==0)
+				continue;
+			if(first[membership[v]]<0)
+				first[membership[v]]=v;
+			size[membership[v]]++;
+		}
+		ArrayList<Integer> communities = new ArrayList<>();
+		for(int c=0; c<n; c++)
+			if(size[c]>0)
+				communities.add(c);
+		Collections.sort(communities, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer c1, Integer c2) {
+				if(size[c1]!=size[c2])
+					return Integer.compare(size[c2], size[c1]);
+				return Integer.compare(first[c1], first[c2]);
+			}
+		});
+		int[] ID = new int[n];
+		for(int i=0; i<communities.size(); i++)
+			ID[communities.get(i)]=i;
+		int[] result = new int[n];
+		for(int v=0; v<n; v++)
+			result[v] = graph.getDegree(v)==0 ? -1 : ID[membership[v]];
+		return result;
+	}
+}
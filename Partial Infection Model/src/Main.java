@@ -10,17 +10,18 @@ boolean parameter set to false.
  */
 
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Scanner;
-import java.util.StringTokenizer;
-import java.util.SplittableRandom;
 
 public class Main {
 
@@ -42,18 +43,42 @@ public class Main {
 	//number of graphs rotated through in the dynamic graph
 	static final int numDayGraphs=5;
 
-	//seeded random for use in stochastic model.  
-	static final SplittableRandom RNG = new SplittableRandom(743); //743 is the original
+	// Set this to true to build the day graphs and G_F from the course rosters instead of the precomputed edge lists
+	static final boolean buildGraphsFromCourses = false;
+
+	// Set this to true to detect communities with Louvain instead of reading the ModuLand output in Full Graph Duration Communities.txt
+	static final boolean detectCommunities = false;
+
+	// Set this to true to compute the centralities from the graphs instead of reading the Cytoscape export in Node Properties.txt.
+	// Paths are unweighted, like the export; set weightedCentralities to measure edges by 1/weight instead.
+	static final boolean computeCentralities = false;
+	static final boolean weightedCentralities = false;
+	// Above 0, betweenness is estimated by path sampling to within this fraction of all vertex pairs, with probability 1-betweennessDelta,
+	// and closeness from the distances to sampled pivots
+	static final double betweennessEpsilon = 0;
+	static final double betweennessDelta = .1;
+	// Seed of that sampling. It does not draw from RNG, so computing centralities leaves the simulations' random numbers alone.
+	static final long centralitySeed = 743;
+
+	// Set this to true to load vertices and graphs from a binary snapshot, written on the first run that parses the text inputs.
+	// The snapshot is rebuilt whenever the input files or the settings above no longer match the ones it was written from.
+	static final boolean useSnapshot = false;
+	// Set this to true to run static simulations on G_F from a snapshot on a CompactGraph instead of Edge objects. Weights are
+	// quantized to 16 bits and contacts are drawn in neighbor order, so results differ slightly from the Edge graph's.
+	static final boolean useCompactGraph = false;
+
+	//seeded random for use in stochastic model. Each thread has its own generator, so concurrent experiments can reseed theirs with RNG.set().
+	static final ThreadLocal<SeededRandom> RNG = ThreadLocal.withInitial(() -> new SeededRandom(743)); //743 is the original
 
 	// read edges from an input file, assuming the vertices are in the hashmap
-	public static ArrayList<Edge> getEdges(Scanner sc, HashMap<String,Vertice> map, int day)
+	public static ArrayList<Edge> getEdges(MappedTokenizer sc, HashMap<String,Vertice> map, int day)
 	{
 		ArrayList<Edge> edges = new ArrayList<>();
 		Vertice v1;
 		Vertice v2;
 		double weight;
 		Edge temp;
-		while(sc.hasNextLine())
+		while(sc.hasNext())
 		{
 			v1=map.get(sc.next());
 			v2=map.get(sc.next());
@@ -69,13 +94,13 @@ public class Main {
 	}
 
 	//Useful for rendering.
-	public static ArrayList<Edge> getEdgesNoInput(Scanner sc, HashMap<String,Vertice> map)
+	public static ArrayList<Edge> getEdgesNoInput(MappedTokenizer sc, HashMap<String,Vertice> map)
 	{
 		ArrayList<Edge> edges = new ArrayList<>();
 		Vertice v1;
 		Vertice v2;
 		double weight;
-		while(sc.hasNextLine())
+		while(sc.hasNext())
 		{
 			v1=map.get(sc.next());
 			v2=map.get(sc.next());
@@ -85,10 +110,10 @@ public class Main {
 		sc.close();
 		return edges;
 	}
-	public static ArrayList<Vertice> getVertices(HashMap<String, Vertice> map, Scanner sc)
+	public static ArrayList<Vertice> getVertices(HashMap<String, Vertice> map, MappedTokenizer sc)
 	{
 		ArrayList<Vertice> output = new ArrayList<>();
-		while(sc.hasNextLine())
+		while(sc.hasNext())
 		{
 			output.add(map.get(sc.next())); 
 		}
@@ -97,54 +122,24 @@ public class Main {
 	}
 	public static void vaccGlobalPeaks(ArrayList<Vertice> vertices, int index, int numOfVaccines, boolean pickHigh)
 	{
-		ArrayList<Vertice> vCopy = new ArrayList<>(vertices);
-		Collections.sort(vCopy, new Comparator<Vertice>() {
-			@Override
-			public int compare(Vertice v1,Vertice v2) {
-				return v1.centralities.get(index).compareTo(v2.centralities.get(index));
-			}
-		});
-		if(pickHigh)
-		{
-			for(int j=vCopy.size()-1; j>=vCopy.size()-numOfVaccines; j--)
-			{
-				if(vCopy.get(j).getCumulation()==0)
-				{
-					vCopy.get(j).setProbNotRecovered(0);
-					vCopy.get(j).setVaccinationState(true);
-				}
-			}
-		}
-		else
+		vaccGlobalPeaks(new Ranking(vertices, index), numOfVaccines, pickHigh);
+	}
+	// Same as above with a ranking kept by the caller, so runs over many budgets rank the vertices once
+	public static void vaccGlobalPeaks(Ranking ranking, int numOfVaccines, boolean pickHigh)
+	{
+		for(Vertice v: ranking.top(numOfVaccines, pickHigh))
 		{
-			for(int j=0; j<numOfVaccines; j++)
+			if(v.getCumulation()==0)
 			{
-				if(vCopy.get(j).getCumulation()==0)
-				{
-					vCopy.get(j).setProbNotRecovered(0);
-					vCopy.get(j).setVaccinationState(true);
-				}
+				v.setProbNotRecovered(0);
+				v.setVaccinationState(true);
 			}
 		}
 	}
 	
 	public static void vaccFC(ArrayList<Vertice> vertices, int numOfVaccines)
 	{
-		ArrayList<Vertice> vCopy = new ArrayList<>(vertices);
-		Collections.sort(vCopy, new Comparator<Vertice>() {
-			@Override
-			public int compare(Vertice v1,Vertice v2) {
-				return v1.FC.compareTo(v2.FC);
-			}
-		});
-			for(int j=vCopy.size()-1; j>=vCopy.size()-numOfVaccines; j--)
-			{
-				if(vCopy.get(j).getCumulation()==0)
-				{
-					vCopy.get(j).setProbNotRecovered(0);
-					vCopy.get(j).setVaccinationState(true);
-				}
-			}
+		vaccGlobalPeaks(Ranking.byFC(vertices), numOfVaccines, true);
 	}
 	public static void globalVaccDS(DynamicSimulation DS, HashMap<String, Vertice> map,int traitID, int vaccines, boolean pickHigh)
 	{
@@ -187,7 +182,7 @@ public class Main {
 				SS.setTrickler(v);
 				SS.trickleSimul();
 				analysisArray.add(SS.getTotalEverInfected());
-				analysisArrayRecovered.add(SS.numRecovered());
+				analysisArrayRecovered.add(SS.getData().get(SS.getData().size()-1)[3]);
 				System.out.println(v.getID()+"\t" +traitID+"\t"+ SS.getTotalEverInfected());
 				SS.reset(false);
 		}
@@ -212,7 +207,7 @@ public class Main {
 			temp.add(i);
 		for(int i=0; i<num; i++)
 		{
-			random=(int)(RNG.nextDouble()*temp.size());
+			random=(int)(RNG.get().nextDouble()*temp.size());
 			if(vertices.get(random).getProbNotRecovered()!=0)
 			{
 				vertices.get(random).setProbNotRecovered(0);
@@ -225,37 +220,13 @@ public class Main {
 	}
 
 
-	public static void getMetaGraph(Scanner communities, HashMap<String, Vertice> map, PrintWriter output)
+	// Builds the community meta-graph from the contact graphs and writes it in the format of Meta Edge List.txt
+	public static Graph getMetaGraph(Graph[] layers, HashMap<Integer,ArrayList<String>> commMap, PrintWriter output)
 	{
-		HashMap<Integer,ArrayList<String>> tempCommMap = CommunityAnalysis.getCommunities(communities);
-		HashMap<Integer,ArrayList<Vertice>> commMap = new HashMap<>();
-
-		ArrayList<Vertice> tempVertices = new ArrayList<>();
-		for(Integer x: tempCommMap.keySet())
-		{
-			for(String s: tempCommMap.get(x))
-				tempVertices.add(map.get(s));
-			commMap.put(x, tempVertices);
-			tempVertices=new ArrayList<>();
-		}
-		ArrayList<Integer> communityList = new ArrayList<>(commMap.keySet());
-		double weight=0;
-		for(int i=0; i<communityList.size(); i++)
-		{
-			for(int j=i+1; j<communityList.size(); j++)
-			{
-				for(Vertice x: commMap.get(communityList.get(i)))
-				{
-					for(Vertice y: commMap.get(communityList.get(j)))
-					{
-						weight+=x.getEdgeWeight(0, y);
-					}
-				}
-				if(weight!=0)
-					output.println(communityList.get(i)+"\t"+communityList.get(j)+"\t"+weight);
-				weight=0;
-			}
-		}
+		Graph Meta = GraphBuilder.buildMetaGraph(layers, commMap);
+		for(Edge e: Meta.getEdges())
+			output.println(e.getSource().getID()+"\t"+e.getTarget().getID()+"\t"+e.getWeight());
+		return Meta;
 	}
 	public static double getEdgeWeight(Vertice v1, Vertice v2)
 	{
@@ -267,48 +238,17 @@ public class Main {
 		return 0;
 	}
 
+	// Shortest paths between every pair of communities, with edge lengths 1/weight. Runs a Dijkstra search from every
+	// community in parallel over the sparse meta-graph. The diagonal is set to infinity after results are printed.
 	public static double[][] allPairsSP(Graph communities, PrintWriter results)
 	{
-		HashMap<Integer, String> IDs = new HashMap<>(); //vertex ID + Community ID
-		for(int i=0; i<communities.getVertices().size(); i++)
-		{
-			IDs.put(i, communities.getVertices().get(i).getID());
-		}
-		double[][] dist = new double[IDs.size()][IDs.size()];
-		for(int i=0; i<dist.length; i++)
-		{
-			for(int j=0; j<dist.length; j++)
-			{
-				dist[i][j]=Double.POSITIVE_INFINITY;
-			}
-		}
-		for(int i=0; i<communities.getVertices().size(); i++)
-		{
-			for(int j=0; j<communities.getVertices().size(); j++)
-			{
-				dist[i][j]= 1/getEdgeWeight(communities.getVertices().get(i),communities.getVertices().get(j));
-			}
-		}
-		for(int i=0; i<dist.length; i++)
-		{
-			dist[i][i]=0;
-		}
-		for(int k=0; k<IDs.size(); k++)
-		{
-
-			for(int i=0; i<IDs.size(); i++)
-				for(int j=0; j<IDs.size(); j++)
-				{
-					if(dist[i][j]>dist[i][k]+dist[k][j])
-						dist[i][j]=dist[i][k]+dist[k][j];
-				}
-		}
+		double[][] dist = ShortestPaths.allPairs(communities.getCSR());
 		if(results!=null)
 		{
 			
-			for(int i=0; i<IDs.size(); i++)
+			for(int i=0; i<dist.length; i++)
 			{
-				for(int j=0; j<IDs.size(); j++)
+				for(int j=0; j<dist.length; j++)
 				{
 					results.print(dist[i][j]+"\t");
 					
@@ -322,15 +262,25 @@ public class Main {
 		}
 		return dist;
 	}
+	// One row of allPairsSP: distances from targetCommID (or the first community, if it is absent) to every community
+	public static double[] singleSourceSP(Graph communities, int targetCommID)
+	{
+		int index=communities.getCommPosition(targetCommID);
+		if(index<0)
+			index=0;
+		double[] dist = ShortestPaths.singleSource(communities.getCSR(), index);
+		dist[index]=Double.POSITIVE_INFINITY;
+		return dist;
+	}
 
 	//This function is used to create and initialize a list of Course objects, which each contain a list of students, a course ID, and the start/end time of the course
-	/*	The format of the cl scanner is as follows:
+	/*	The format of the cs tokenizer is as follows:
 	 *	<Class ID>	<Student ID> 	<Student ID> 	....
 	 *	.
 	 *	.
 	 *	.
 	 * 	
-	 * 	The format of the cs scanner is as follows:
+	 * 	The format of the cl tokenizer is as follows:
 	 * 	class_nbr	pattern		mtg_start		mtg_end
 	 * <Class ID>	<weekday>	<start time>	<end time>
 	 * 33684		F		08.30.00.000000		11.20.00.000000
@@ -338,7 +288,7 @@ public class Main {
 	 */
 
 
-	public static ArrayList<Course> initCourses(HashMap<String, Vertice> map, Scanner cl, Scanner cs)
+	public static ArrayList<Course> initCourses(HashMap<String, Vertice> map, MappedTokenizer cl, MappedTokenizer cs)
 	{
 		HashMap<Integer, Course> courses = new HashMap<>();
 		cl.nextLine();
@@ -350,7 +300,7 @@ public class Main {
 		String single;
 		String start;
 		String end;
-		while(cl.hasNextLine())
+		while(cl.hasNext())
 		{
 			cNum=cl.nextInt();
 			days = cl.next();
@@ -388,15 +338,13 @@ public class Main {
 			courses.put(cNum,new Course(cNum, new Time(dayList,sTime, eTime))); 
 			dayList = new ArrayList<>();
 		}
-		StringTokenizer st;
 		String temp;
-		while(cs.hasNextLine())
+		while(cs.hasNext())
 		{
-			st = new StringTokenizer(cs.nextLine());
-			cNum = Integer.parseInt(st.nextToken());
-			while(st.hasMoreTokens())
+			cNum = cs.nextInt();
+			while(cs.hasNextInLine())
 			{
-				temp=st.nextToken();
+				temp=cs.next();
 				if(map.containsKey(temp)&&courses.containsKey(cNum))
 					courses.get(cNum).addStudent(map.get(temp));
 			}
@@ -420,7 +368,7 @@ public class Main {
 		}
 	}
 
-	public static Graph getGraph(Scanner v, Scanner e,HashMap<String, Vertice> map, int day) 
+	public static Graph getGraph(MappedTokenizer v, MappedTokenizer e,HashMap<String, Vertice> map, int day) 
 	{
 		ArrayList<Vertice> temp = getVertices(map, v);
 		Graph result = new Graph(temp,getEdges(e, map, day),day);
@@ -508,13 +456,13 @@ public class Main {
 	name	BetweennessCentrality	ClosenessCentrality	Degree	CCC
 	...		...						...					...		...
 	 */
-	public static void addCentralities(Scanner nodeProperties, HashMap<String, Vertice> map, int numProperties)
+	public static void addCentralities(MappedTokenizer nodeProperties, HashMap<String, Vertice> map, int numProperties)
 	{
 		//Skipping the title line
 		nodeProperties.nextLine();
 		String next;
 		ArrayList<Double> temp;
-		while(nodeProperties.hasNextLine())
+		while(nodeProperties.hasNext())
 		{
 			next = nodeProperties.next();
 			temp= map.get(next).centralities;
@@ -524,6 +472,7 @@ public class Main {
 			}
 			nodeProperties.nextLine();
 		}
+		nodeProperties.close();
 	}
 
 	//This function is used to calculate how many vaccines are given to each community in the reactionary vaccination schema
@@ -536,44 +485,49 @@ public class Main {
 	 */
 	public static HashMap<Integer, Integer> getRingPartition(Graph communities, HashMap<Integer, ArrayList<String>> commMap, double[][] dist,int targetCommID, int totalVaccines)
 	{
-		int index=0;
+		int index=communities.getCommPosition(targetCommID);
+		if(index<0)
+			index=0;
+		return getRingPartition(communities, commMap, dist[index], totalVaccines);
+	}
+	// Same as above, computing only the target's row of distances instead of reading it from allPairsSP
+	public static HashMap<Integer, Integer> getRingPartition(Graph communities, HashMap<Integer, ArrayList<String>> commMap, int targetCommID, int totalVaccines)
+	{
+		return getRingPartition(communities, commMap, singleSourceSP(communities, targetCommID), totalVaccines);
+	}
+	// dist: distances from the target community to every community, by position in the meta-graph
+	private static HashMap<Integer, Integer> getRingPartition(Graph communities, HashMap<Integer, ArrayList<String>> commMap, double[] dist, int totalVaccines)
+	{
 		int vaccinesLeft=totalVaccines; 
 		int tempVaccineAmount=0;
 		double totalDistance=0;
 		int currentCommID=-100;
 		HashMap<Integer, Integer> partition = new HashMap<>(); // integer1: community ID . Integer 2: How many vaccines they get
-		for(int i=0; i<communities.getVertices().size(); i++)
-		{
-			if(Integer.parseInt(communities.getVertices().get(i).getID())==targetCommID)
-			{
-				index=i;
-			}
-		}
 		for(int j=0; j<communities.getVertices().size(); j++)
 		{
-			totalDistance+=1/dist[index][j];
+			totalDistance+=1/dist[j];
 		}
 		for(int j=0; j<communities.getVertices().size(); j++)
 		{
-			tempVaccineAmount= (int)(((1/dist[index][j])/totalDistance)*totalVaccines);
-			currentCommID=Integer.parseInt(communities.getVertices().get(j).getID());
+			tempVaccineAmount= (int)(((1/dist[j])/totalDistance)*totalVaccines);
+			currentCommID=communities.getCommID(j);
 			if(commMap.get(currentCommID).size()<tempVaccineAmount)
 				tempVaccineAmount=commMap.get(currentCommID).size();
-			partition.put(Integer.parseInt(communities.getVertices().get(j).getID()), tempVaccineAmount);
+			partition.put(currentCommID, tempVaccineAmount);
 			vaccinesLeft-=tempVaccineAmount;
 		}
-		while(vaccinesLeft>0)
+		// leftovers go to the first community with room. Communities only fill up, so the search never moves backwards.
+		int j=0;
+		while(vaccinesLeft>0&&j<communities.getVertices().size())
 		{
-			for(int j=0; j<communities.getVertices().size(); j++)
+			currentCommID=communities.getCommID(j);
+			if(partition.get(currentCommID)<commMap.get(currentCommID).size())
 			{
-				currentCommID=Integer.parseInt(communities.getVertices().get(j).getID());
-				if(partition.get(currentCommID)<commMap.get(currentCommID).size())
-				{
-					partition.put((currentCommID), partition.get(currentCommID)+1);
-					vaccinesLeft--;
-					break;
-				}
+				partition.put((currentCommID), partition.get(currentCommID)+1);
+				vaccinesLeft--;
 			}
+			else
+				j++;
 		}
 		return partition;
 	}
@@ -582,7 +536,7 @@ public class Main {
 	/*	input:
 	 * 	communities: Community meta-graph
 	 * 	commMap: A HashMap pairing Community IDs to Vertex IDs
-	 * 	dist: All-pairs shortest path between each pair of communities on the meta-graph
+	 * 	dist: All-pairs shortest path between each pair of communities on the meta-graph, or null to compute only the target's row
 	 * 	targetCommID: ID of the community to be targeted by the vaccine distribution strategy
 	 * 	totalVaccines: Number of vaccines to be distributed
 	 * 	traitID: ID of trait used to select vertices for vaccination
@@ -590,46 +544,18 @@ public class Main {
 	 */
 	public static void runRingVacc(Graph communities, HashMap<Integer, ArrayList<String>> commMap, HashMap<String, Vertice> map, double[][] dist, int targetCommID, int totalVaccines, int traitID, boolean pickHigh)
 	{
-		HashMap<Integer, Integer> partition = getRingPartition(communities, commMap, dist, targetCommID, totalVaccines);
-		HashMap<Integer,ArrayList<Vertice>> verticeCommMap = new HashMap<>();
-		ArrayList<Vertice> tempVertices = new ArrayList<>();
-
-		for(Integer x: commMap.keySet())
-		{
-			for(String s: commMap.get(x))
-				tempVertices.add(map.get(s));
-			verticeCommMap.put(x, tempVertices);
-			tempVertices=new ArrayList<>();
-		}
+		runRingVacc(communities, commMap, dist, targetCommID, totalVaccines, Ranking.byCommunity(commMap, map, traitID), pickHigh);
+	}
+	// rankings: Ranking.byCommunity for the trait, reused across target communities and budgets
+	public static void runRingVacc(Graph communities, HashMap<Integer, ArrayList<String>> commMap, double[][] dist, int targetCommID, int totalVaccines, HashMap<Integer, Ranking> rankings, boolean pickHigh)
+	{
+		HashMap<Integer, Integer> partition = dist==null ? getRingPartition(communities, commMap, targetCommID, totalVaccines) : getRingPartition(communities, commMap, dist, targetCommID, totalVaccines);
 		for(Integer x: partition.keySet())
 		{
-			Collections.sort(verticeCommMap.get(x), new Comparator<Vertice>() { 
-				@Override
-				public int compare(Vertice v1,Vertice v2) {
-					return v1.centralities.get(traitID).compareTo(v2.centralities.get(traitID));
-				}
-			});
-		}
-		if(pickHigh)
-		{
-			for(Integer x: partition.keySet())
-			{
-				for(int i=verticeCommMap.get(x).size()-1; i>=verticeCommMap.get(x).size()-partition.get(x); i--)
-				{
-					verticeCommMap.get(x).get(i).setProbNotRecovered(0);
-					verticeCommMap.get(x).get(i).setVaccinationState(true);
-				}
-			}
-		}
-		else
-		{
-			for(Integer x: partition.keySet())
+			for(Vertice v: rankings.get(x).top(partition.get(x), pickHigh))
 			{
-				for(int i=0; i<partition.get(x); i++)
-				{
-					verticeCommMap.get(x).get(i).setProbNotRecovered(0);
-					verticeCommMap.get(x).get(i).setVaccinationState(true);
-				}
+				v.setProbNotRecovered(0);
+				v.setVaccinationState(true);
 			}
 		}
 	}
@@ -643,16 +569,9 @@ public class Main {
 			current.setProbNotRecovered(0);
 		}
 	}
-	public static void vaccVerticeNeighbors(Vertice v, int depth) //vaccinates neighbors of v, and their neighbors, up to input depth. For full graph use only
+	public static void vaccVerticeNeighbors(Graph G, Vertice v, int depth) //vaccinates neighbors of v, and their neighbors, up to input depth. See RingVaccination for weight thresholds and budgets
 	{
-		if(depth==0)
-			return;
-		for(Edge e: v.getEdges(0))
-		{
-			e.getOther(v).setVaccinationState(true);
-			e.getOther(v).setProbNotRecovered(0);
-			vaccVerticeNeighbors(e.getOther(v),depth-1);
-		}
+		RingVaccination.vaccinate(G, v, depth, 0, -1, false);
 	}
 	
 
@@ -683,7 +602,7 @@ public class Main {
 		{
 			for(Integer comm: commConnectivity.get(v).keySet())
 			{
-				commConnectivity.get(v).put(comm, commConnectivity.get(v).get(comm)/getEdgeWeight(communities.getVertex(Integer.toString(comm)),communities.getVertex(Integer.toString(v.getCommID()))));
+				commConnectivity.get(v).put(comm, commConnectivity.get(v).get(comm)/getEdgeWeight(communities.getCommVertex(comm),communities.getCommVertex(v.getCommID())));
 			}
 		}
 		for(Vertice v: commConnectivity.keySet())
@@ -785,6 +704,7 @@ public class Main {
 	}
 
 	// this function is used to run a single set of experiments using the reactionary vaccination strategy
+	// ReactionaryVaccination runs the same experiments with the target communities in parallel
 	/*
 	 * 	Input: 
 	 * 	DS: DynamicSimulation object used for simulations
@@ -801,9 +721,10 @@ public class Main {
 		ArrayList<Double> analysisArray = new ArrayList<>();
 		//	ArrayList<Double> analysisArrayRecovered = new ArrayList<>();
 		Vertice current;
+		HashMap<Integer, Ranking> rankings = Ranking.byCommunity(commMap, map, traitID);
 		for(Integer x: commMap.keySet())
 		{
-			runRingVacc(Meta, commMap,map, dist, x, vaccines, traitID, pickHigh);
+			runRingVacc(Meta, commMap, dist, x, vaccines, rankings, pickHigh);
 			for(String s: commMap.get(x))
 			{
 				current=map.get(s);
@@ -835,9 +756,10 @@ public class Main {
 		ArrayList<Double> analysisArray = new ArrayList<>();
 		//	ArrayList<Double> analysisArrayRecovered = new ArrayList<>();
 		Vertice current;
+		HashMap<Integer, Ranking> rankings = Ranking.byCommunity(commMap, map, traitID);
 		for(Integer x: commMap.keySet())
 		{
-			runRingVacc(Meta, commMap,map, dist, x, vaccines, traitID, pickHigh);
+			runRingVacc(Meta, commMap, dist, x, vaccines, rankings, pickHigh);
 			if(!monteCarlo)
 			{
 				for(String s: commMap.get(x))
@@ -858,7 +780,8 @@ public class Main {
 					current=map.get(s);
 						SS.setInfected(map.get(s));
 						SS.simul();
-						analysisArray.add(SS.getTotalEverInfected());
+						//the expected total ever infected is only tracked by the deterministic model
+						analysisArray.add((double)SS.getNumResistant());
 						//			analysisArrayRecovered.add(SS.numRecovered());
 						SS.reset(false);
 				}
@@ -882,11 +805,11 @@ public class Main {
 	// Input: day, name of a weekday, Capitalize first letter
 	// Input: weekday index
 	// Input: map, string id of a vertice to vertice object
-	public static Graph processDay(String day,int weekday, HashMap<String, Vertice> map) throws FileNotFoundException
+	public static Graph processDay(String day,int weekday, HashMap<String, Vertice> map) throws IOException
 	{
 		Graph result=null;
-		Scanner edges = new Scanner(new File(inputDirectory+ day+"\\duration_edges.txt"));
-		Scanner vertices = new Scanner(new File(inputDirectory+day+"\\IDList.txt"));
+		MappedTokenizer edges = new MappedTokenizer(inputDirectory+ day+"\\duration_edges.txt");
+		MappedTokenizer vertices = new MappedTokenizer(inputDirectory+day+"\\IDList.txt");
 		result= getGraph(vertices,edges,map, weekday);
 		edges.close();
 		vertices.close();
@@ -1110,11 +1033,31 @@ public class Main {
 		{
 			DS.setTrickler(initInfectious);
 			DS.trickleSimul();
-			System.out.println(initInfectious.getID()+"\t"+DS.getTotalEverInfected()+"\t"+DS.numRecovered());
+			System.out.println(initInfectious.getID()+"\t"+DS.getTotalEverInfected()+"\t"+DS.getData().get(DS.getData().size()-1)[3]);
 		}
 		DS.reset(affectVaccinated);
 	}
 
+	// Same as runDynamicSimulation, but steps through each weekday's course meetings in start-time order.
+	// Pass a HypergraphSimulation for the linear-time version that skips the per-course clique.
+	public static void runMeetingSimulation(MeetingSimulation MS, Vertice initInfectious, boolean monteCarlo, boolean affectVaccinated)
+	{
+		MS.setStartDay(initInfectious.getStartingPoint());
+		if(monteCarlo)
+		{
+			MS.setInfected(initInfectious);
+			MS.simul();
+			System.out.println(initInfectious.getID()+"\t"+MS.getNumResistant());
+		}
+		else
+		{
+			MS.setTrickler(initInfectious);
+			MS.trickleSimul();
+			System.out.println(initInfectious.getID()+"\t"+MS.getTotalEverInfected()+"\t"+MS.numRecovered());
+		}
+		MS.reset(affectVaccinated);
+	}
+
 
 	//Used to take day-by-day averages of stochastic outbreak trials.
 	public static void runDynamicSimulationTrials(DynamicSimulation DS, Vertice initInfectious, int numTrials, int numDays, int outbreakThreshold, int outbreakTrialThreshold, PrintWriter pw)
@@ -1200,141 +1143,168 @@ public class Main {
 		}
 	}
 
-	// Calculates the modularity of G based on the communities detected by the ModuLand Cytoscape plug-in.
+	// Calculates the modularity of G based on the communities detected by the ModuLand Cytoscape plug-in, counting every
+	// edge once regardless of weight. Vertices outside commMap form one more community.
 	public static double modularityCalculator(Graph G, HashMap<String, Vertice> map, HashMap<Integer, ArrayList<String>> commMap)
 	{
-		double result=0;
-		
-		double e_ii=0;
-		double a_i=0;
-		double overcounted=0;
-		Vertice current;
-		Vertice other;
+		HashMap<Vertice, Integer> commOf = new HashMap<>();
 		for(Integer x: commMap.keySet())
-		{
 			for(String s: commMap.get(x))
+				commOf.put(map.get(s), x);
+		ArrayList<Vertice> vertices = G.getVertices();
+		int[] labels = new int[vertices.size()];
+		for(int i=0; i<labels.length; i++)
+			labels[i]=commOf.getOrDefault(vertices.get(i), Integer.MIN_VALUE);
+		return new Modularity(G.getCSR(), labels, false, 1).getModularity();
+	}
+	// Specific to rendering the original data-set using CytoScape location data. For use with JavaFX.
+	// Streams the node "data" and "position" objects of the Cytoscape JSON export, in either order within a node. Returns
+	// {x[], y[]} indexed by Vertice.getIndex(); entries for vertices without a position are NaN.
+	public static double[][] getLocations(File coordinates, HashMap<String, Vertice> map) throws IOException
+	{
+		int size=0;
+		for(Vertice v: map.values())
+			size=Math.max(size, v.getIndex()+1);
+		double[] x = new double[size];
+		double[] y = new double[size];
+		Arrays.fill(x, Double.NaN);
+		Arrays.fill(y, Double.NaN);
+
+		JsonPullParser parser = new JsonPullParser(coordinates);
+		// per open object: the vertex named by its "data" and the coordinates of its "position", assigned at its end
+		Vertice[] nodes = new Vertice[16];
+		double[] nodeX = new double[16];
+		double[] nodeY = new double[16];
+		int depth=0;
+		JsonPullParser.Token t;
+		while((t=parser.next())!=JsonPullParser.Token.end)
+		{
+			if(t==JsonPullParser.Token.startObject)
 			{
-				current=map.get(s);
-				for(Edge e: current.getEdges(0))
+				if(depth==nodes.length)
 				{
-					other=e.getOther(current);
-					if((Integer)other.getCommID()==x)
-					{
-						e_ii++;
-					}
+					nodes = Arrays.copyOf(nodes, 2*depth);
+					nodeX = Arrays.copyOf(nodeX, 2*depth);
+					nodeY = Arrays.copyOf(nodeY, 2*depth);
 				}
+				nodes[depth]=null;
+				nodeX[depth]=Double.NaN;
+				nodeY[depth]=Double.NaN;
+				depth++;
 			}
-			e_ii=e_ii/(2*G.getEdges().size()); // division by 2 accounts for overcounting
-			for(String s: commMap.get(x))
+			else if(t==JsonPullParser.Token.endObject&&depth>0)
 			{
-				current=map.get(s);
-				for(Edge e: current.getEdges(0))
+				depth--;
+				if(nodes[depth]!=null&&!Double.isNaN(nodeX[depth])&&!Double.isNaN(nodeY[depth]))
 				{
-					other=e.getOther(current);
-					if((Integer)other.getCommID()==x)
-					{
-						overcounted++;
-					}
-					else
-					{
-						a_i++;
-					}
+					x[nodes[depth].getIndex()]=nodeX[depth];
+					y[nodes[depth].getIndex()]=nodeY[depth];
+				}
+			}
+			else if(t==JsonPullParser.Token.name&&depth>0&&parser.isString("data"))
+				nodes[depth-1]=readNodeData(parser, map);
+			else if(t==JsonPullParser.Token.name&&depth>0&&parser.isString("position"))
+			{
+				if(parser.next()!=JsonPullParser.Token.startObject)
+					continue;
+				while(parser.next()==JsonPullParser.Token.name)
+				{
+					boolean isX = parser.isString("x");
+					if(!isX&&!parser.isString("y"))
+						parser.skipValue();
+					else if(parser.next()==JsonPullParser.Token.number)
+						(isX ? nodeX : nodeY)[depth-1]=parser.getNumber();
 				}
-				a_i+=overcounted/2;
-				a_i/=G.getEdges().size();
 			}
-			result+=e_ii-a_i*a_i;
-			e_ii=0;
-			a_i=0;
-			overcounted=0;
 		}
-
-		
-		return result;
+		return new double[][] {x, y};
 	}
-	// Specific to rendering the original data-set using CytoScape location data. For use with JavaFX.
-	public static HashMap<Vertice, Location> getLocations(Scanner sc, HashMap<String, Vertice> map)
+	// Reads a node's "data" object and returns the vertex named by shared_name (or name), null if there is none.
+	private static Vertice readNodeData(JsonPullParser parser, HashMap<String, Vertice> map)
 	{
-		HashMap<Vertice, Location> result= new HashMap<>();
-		Vertice temp;
-		double tempX;
-		String tempString;
-		String tempString2;
-		double tempY;
-		for(int i=0; i<map.size(); i++)
-		{
-			sc.nextLine();
-			sc.nextLine();
-			sc.next();
-			sc.next();
-			tempString2=sc.next();
-			tempString2=tempString2.substring(1, tempString2.length()-2);
-			temp=map.get(tempString2);
-			for(int j=0; j<7; j++)
-				sc.nextLine();
-			sc.next();
-			sc.next();
-			tempString =sc.next();
-			tempX=Double.parseDouble(tempString.substring(0,tempString.length()-1));
-			sc.nextLine();
-			sc.next();
-			sc.next();
-			tempY=sc.nextDouble();
-			result.put(temp,new Location(tempX,tempY));
-			for(int j=0; j<4; j++)
-				sc.nextLine();
+		if(parser.next()!=JsonPullParser.Token.startObject)
+			return null;
+		Vertice result=null;
+		while(parser.next()==JsonPullParser.Token.name)
+		{
+			if(parser.isString("shared_name")||(result==null&&parser.isString("name")))
+			{
+				if(parser.next()==JsonPullParser.Token.string&&map.containsKey(parser.getString()))
+					result=map.get(parser.getString());
+			}
+			else
+				parser.skipValue();
 		}
-		sc.close();
 		return result;
 	}
 
-	public static void main(String args[]) throws IOException
-	{ 
-		Scanner c_FullD = new Scanner(new File(inputDirectory+"Full Graph Duration Communities.txt"));
-		HashMap<Integer, ArrayList<String>> commMap = CommunityAnalysis.getCommunities(c_FullD);
-		// read IDs of nodes
-		Scanner IDs = new Scanner(new File(inputDirectory+"IDList.txt"));
-
-		// maps ID to vertices
-		HashMap<String, Vertice> map = new HashMap<String, Vertice>();
-
-		String temp;
-		while(IDs.hasNextLine())
-		{
-			temp =IDs.next();
-			map.put(temp, new Vertice(temp,numDayGraphs));
+	/*	SHA-256 of everything the vertices and graphs of the given mode are built from: the settings above and the path, length
+	 * 	and modification time of every input file read, so checking a snapshot does not read the inputs themselves.
+	 * 	A snapshot is only used while its fingerprint matches.
+	 */
+	public static byte[] getInputFingerprint(boolean fullGraph) throws IOException
+	{
+		MessageDigest digest;
+		try
+		{
+			digest = MessageDigest.getInstance("SHA-256");
+		}
+		catch(NoSuchAlgorithmException e)
+		{
+			throw new IllegalStateException(e);
+		}
+		ByteBuffer settings = ByteBuffer.allocate(64);
+		settings.put((byte)(fullGraph ? 1 : 0)).put((byte)(buildGraphsFromCourses ? 1 : 0)).put((byte)(detectCommunities ? 1 : 0));
+		settings.put((byte)(computeCentralities ? 1 : 0)).put((byte)(weightedCentralities ? 1 : 0));
+		settings.putInt(contactsPerHour).putInt(numDayGraphs).putInt(numCentralities);
+		settings.putDouble(betweennessEpsilon).putDouble(betweennessDelta).putLong(centralitySeed);
+		digest.update(settings.array(), 0, settings.position());
+		ArrayList<String> files = new ArrayList<>();
+		files.add("IDList.txt");
+		files.add("Courses.txt");
+		files.add("CourseTimes.txt");
+		if(!detectCommunities)
+			files.add("Full Graph Duration Communities.txt");
+		if(!computeCentralities)
+			files.add("Node Properties.txt");
+		if(!buildGraphsFromCourses)
+		{
+			if(fullGraph)
+				files.add("out_Alld.txt");
+			else
+			{
+				for(String day: new String[] {"Monday", "Tuesday", "Wednesday", "Thursday", "Friday"})
+				{
+					files.add(day+"\\duration_edges.txt");
+					files.add(day+"\\IDList.txt");
+				}
+			}
 		}
-		IDs.close();
-		ArrayList<Vertice> vertices = new ArrayList<>(map.values());
-
-		Scanner nodeProperties = new Scanner(new File(inputDirectory+"Node Properties.txt"));
-		addCentralities(nodeProperties,map, numCentralities);
-		setCommIDs(map,commMap);
-
-		PrintWriter pw = new PrintWriter("outfile.txt");
-		PrintWriter experiment = new PrintWriter("experiment.txt");
-
-
-		Scanner v_Meta = new Scanner(new File(inputDirectory+"Meta ID List.txt"));
-		HashMap<String, Vertice> metaMap = new HashMap<String, Vertice>();
-
-
-		String metaTemp;
-		while(v_Meta.hasNextLine())
+		File file;
+		ByteBuffer stamp = ByteBuffer.allocate(16);
+		for(String name: files)
 		{
-			metaTemp =v_Meta.nextLine();
-			metaMap.put(metaTemp, new Vertice((String)metaTemp, 1));
+			file = new File(inputDirectory+name);
+			digest.update(name.getBytes(StandardCharsets.UTF_8));
+			// a missing file only matters to runs that read it, which fail on their own
+			stamp.clear();
+			stamp.putLong(file.exists() ? file.length() : -1).putLong(file.lastModified());
+			digest.update(stamp.array());
 		}
-		v_Meta.close();
-		v_Meta = new Scanner(new File(inputDirectory+"Meta ID List.txt"));
-		Scanner e_Meta = new Scanner(new File(inputDirectory+"Meta Edge List.txt"));
-		Graph Meta = getGraph(v_Meta, e_Meta, metaMap, 0);
-		v_Meta.close();
-		double[][] dist = allPairsSP(Meta, pw);
+		return digest.digest();
+	}
 
+	// Binary snapshot of the inputs for G_F (fullGraph) or the weekday graphs
+	public static File getSnapshotFile(boolean fullGraph)
+	{
+		return new File(inputDirectory+(fullGraph ? "Full Graph.snapshot" : "Day Graphs.snapshot"));
+	}
 
-		Scanner courseList = new Scanner(new File(inputDirectory+"Courses.txt"));
-		Scanner courseTimes = new Scanner(new File(inputDirectory+"CourseTimes.txt"));
+	// Courses of each weekday, with the vertices of map as students
+	public static ArrayList<ArrayList<Course>> readCoursesPerDay(HashMap<String, Vertice> map) throws IOException
+	{
+		MappedTokenizer courseList = new MappedTokenizer(inputDirectory+"Courses.txt");
+		MappedTokenizer courseTimes = new MappedTokenizer(inputDirectory+"CourseTimes.txt");
 		ArrayList<Course> courses = initCourses(map,courseTimes,courseList);
 		ArrayList<ArrayList<Course>> coursesPerDay = new ArrayList<>();
 
@@ -1345,35 +1315,139 @@ public class Main {
 		for(Course c: courses)
 			for(Integer day:c.getTime().getDays())
 				coursesPerDay.get((int)day).add(c);
+		return coursesPerDay;
+	}
 
-		setContactsByDuration(vertices,coursesPerDay,contactsPerHour, fullGraphMode);
+	public static void main(String args[]) throws IOException
+	{ 
+		HashMap<Integer, ArrayList<String>> commMap;
+		// maps ID to vertices
+		HashMap<String, Vertice> map = new HashMap<String, Vertice>();
+		ArrayList<Vertice> vertices; // in interned index order
+		ArrayList<ArrayList<Course>> coursesPerDay;
+		Graph[] graphList;
 
-		if(fullGraphMode)
+		File snapshotFile = getSnapshotFile(fullGraphMode);
+		byte[] fingerprint = useSnapshot ? getInputFingerprint(fullGraphMode) : null;
+		GraphSnapshot snapshot = null;
+		if(useSnapshot&&snapshotFile.exists())
+		{
+			snapshot = new GraphSnapshot(snapshotFile);
+			if(!Arrays.equals(snapshot.getFingerprint(), fingerprint))
+			{
+				System.out.println(snapshotFile+" was written from other inputs or settings, rebuilding it");
+				snapshot=null;
+			}
+		}
+		if(snapshot!=null)
+		{
+			vertices = snapshot.createVertices(numDayGraphs);
+			for(Vertice v: vertices)
+				map.put(v.getID(), v);
+			graphList = snapshot.createGraphs(vertices);
+			commMap = snapshot.getCommMap();
+			coursesPerDay = null; //parsed only when a course-based engine below needs it
+		}
+		else
 		{
-			Scanner e_Full = new Scanner(new File(inputDirectory+"out_Alld.txt"));
+			commMap = new HashMap<>();
+			if(!detectCommunities)
+			{
+				MappedTokenizer c_FullD = new MappedTokenizer(inputDirectory+"Full Graph Duration Communities.txt");
+				commMap = CommunityAnalysis.getCommunities(c_FullD);
+				c_FullD.close();
+			}
+			// read IDs of nodes, interning each to a dense index
+			MappedTokenizer IDs = new MappedTokenizer(inputDirectory+"IDList.txt");
+			VertexDictionary dictionary = new VertexDictionary();
+
+			while(IDs.hasNext())
+			{
+				dictionary.add(IDs.next(),numDayGraphs);
+			}
+			IDs.close();
+			vertices = dictionary.getVertices();
+			map = dictionary.toMap();
+
+			if(!computeCentralities)
+			{
+				MappedTokenizer nodeProperties = new MappedTokenizer(inputDirectory+"Node Properties.txt");
+				addCentralities(nodeProperties,map, numCentralities);
+			}
+			setCommIDs(map,commMap);
+
+			coursesPerDay = readCoursesPerDay(map);
+			setContactsByDuration(vertices,coursesPerDay,contactsPerHour, fullGraphMode);
+
+			if(fullGraphMode)
+			{
+				if(buildGraphsFromCourses)
+					graphList = new Graph[] {GraphBuilder.buildFullGraph(vertices, coursesPerDay)};
+				else
+				{
+					MappedTokenizer e_Full = new MappedTokenizer(inputDirectory+"out_Alld.txt");
+					graphList = new Graph[] {new Graph(vertices,getEdges(e_Full, map, 0),0)};
+					e_Full.close();
+				}
+			}
+			else
+			{
+				if(buildGraphsFromCourses)
+					graphList = GraphBuilder.buildDayGraphs(vertices, coursesPerDay);
+				else
+				{
+					Graph mondayGraph = processDay("Monday",0, map);
+					Graph tuesdayGraph = processDay("Tuesday",1, map);
+					Graph wednesdayGraph = processDay("Wednesday",2, map);
+					Graph thursdayGraph = processDay("Thursday",3, map);
+					Graph fridayGraph = processDay("Friday",4, map);
+
+					graphList = new Graph[] {mondayGraph,tuesdayGraph,wednesdayGraph,thursdayGraph,fridayGraph};
+				}
+			}
+			if(detectCommunities)
+			{
+				commMap = Louvain.detectCommunities(vertices, graphList, 1);
+				setCommIDs(map,commMap);
+			}
+			if(computeCentralities)
+				Centrality.setCentralities(vertices, graphList, weightedCentralities, betweennessEpsilon, betweennessDelta, centralitySeed);
+			if(useSnapshot)
+				GraphSnapshot.write(snapshotFile, vertices, graphList, numCentralities, fingerprint);
+		}
+
+		PrintWriter pw = new PrintWriter("outfile.txt");
+		PrintWriter experiment = new PrintWriter("experiment.txt");
 
-			ArrayList<Edge> edges_Full = getEdges(e_Full, map, 0);
-			Graph Full = new Graph(vertices,edges_Full,0);
-			e_Full.close();
-			c_FullD.close();
 
-			StaticSimulation SS = new StaticSimulation(Full,transmissionProbability,latentPeriod,infectiousPeriod);
+		Graph Meta = GraphBuilder.buildMetaGraph(graphList, commMap);
+		double[][] dist = allPairsSP(Meta, pw);
+
+		if(fullGraphMode)
+		{
+			Graph Full = graphList[0];
+
+			StaticSimulation SS;
+			if(useCompactGraph&&snapshot!=null)
+				SS = new StaticSimulation(snapshot.getCompactLayer(0),vertices,transmissionProbability,latentPeriod,infectiousPeriod);
+			else
+				SS = new StaticSimulation(Full,transmissionProbability,latentPeriod,infectiousPeriod);
+		//	SS.setResultCache(new ResultCache(new File("PIM Results"), 1L<<30));
 		//	runStaticSimulation(SS,vertices.get(0),false,true);
 		//	runStaticSimulationTrials(SS,vertices.get(0),100,150,(int)(vertices.size()*.2), 30, pw);
 			System.out.println(modularityCalculator(Full,map, commMap));
 		}
 		else
 		{
-			Graph mondayGraph = processDay("Monday",0, map);
-			Graph tuesdayGraph = processDay("Tuesday",1, map);
-			Graph wednesdayGraph = processDay("Wednesday",2, map);
-			Graph thursdayGraph = processDay("Thursday",3, map);
-			Graph fridayGraph = processDay("Friday",4, map);
-
-			Graph[] graphList = {mondayGraph,tuesdayGraph,wednesdayGraph,thursdayGraph,fridayGraph};
-
 			DynamicSimulation DS = new DynamicSimulation(graphList,vertices,transmissionProbability,latentPeriod,infectiousPeriod);
 			runDynamicSimulation(DS,vertices.get(0),false,true);
+
+		//	if(coursesPerDay==null)
+		//		coursesPerDay = readCoursesPerDay(map);
+		//	MeetingSimulation MS = new MeetingSimulation(coursesPerDay,vertices,transmissionProbability,contactsPerHour,latentPeriod,infectiousPeriod);
+		//	runMeetingSimulation(MS,vertices.get(0),false,true);
+		//	HypergraphSimulation HS = new HypergraphSimulation(coursesPerDay,vertices,transmissionProbability,contactsPerHour,latentPeriod,infectiousPeriod);
+		//	runMeetingSimulation(HS,vertices.get(0),false,true);
 		}
 		experiment.close();
 		pw.close();
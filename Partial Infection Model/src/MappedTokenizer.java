@@ -0,0 +1,213 @@
+/* Whitespace tokenizer over a memory-mapped input file. Replaces java.util.Scanner for the edge lists, ID lists and other
+ * tab-separated inputs, which Scanner parses with regular expressions.
+ *
+ * Bytes are read straight from the mapping. Numbers are parsed by hand, falling back to Double.parseDouble only when a
+ * decimal cannot be converted exactly (mantissa above 2^53 or a power of ten outside [-22, 22]).
+ * Inputs are assumed to be ASCII and smaller than 2 GB.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.NoSuchElementException;
+
+public class MappedTokenizer {
+	private static final double[] powersOfTen = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+			1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+	private static final long maxExactMantissa = 1L<<53;
+
+	private MappedByteBuffer buffer;
+	private int limit;
+	private int pos;
+	private byte[] scratch; //reused for token bytes
+
+	public MappedTokenizer(File file) throws IOException
+	{
+		try(RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel())
+		{
+			if(channel.size()>Integer.MAX_VALUE)
+				throw new IOException(file+" is too large to map ("+channel.size()+" bytes)");
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		limit = buffer.limit();
+		pos = 0;
+		scratch = new byte[64];
+	}
+	public MappedTokenizer(String path) throws IOException
+	{
+		this(new File(path));
+	}
+
+	private static boolean isWhitespace(byte b)
+	{
+		return b==' '||b=='\t'||b=='\r'||b=='\n';
+	}
+	private void skipWhitespace()
+	{
+		while(pos<limit&&isWhitespace(buffer.get(pos)))
+			pos++;
+	}
+
+	// true if another token remains anywhere in the file
+	public boolean hasNext()
+	{
+		skipWhitespace();
+		return pos<limit;
+	}
+	// true if another token remains before the end of the current line
+	public boolean hasNextInLine()
+	{
+		byte b;
+		while(pos<limit)
+		{
+			b=buffer.get(pos);
+			if(b=='\n')
+				return false;
+			if(!isWhitespace(b))
+				return true;
+			pos++;
+		}
+		return false;
+	}
+	// skips the remainder of the current line, including the line break
+	public void nextLine()
+	{
+		while(pos<limit&&buffer.get(pos)!='\n')
+			pos++;
+		if(pos<limit)
+			pos++;
+	}
+
+	// reads the next token into the scratch buffer and returns its length
+	private int readToken()
+	{
+		if(!hasNext())
+			throw new NoSuchElementException();
+		int length=0;
+		byte b;
+		while(pos<limit&&!isWhitespace(b=buffer.get(pos)))
+		{
+			if(length==scratch.length)
+			{
+				byte[] larger = new byte[scratch.length*2];
+				System.arraycopy(scratch, 0, larger, 0, length);
+				scratch=larger;
+			}
+			scratch[length++]=b;
+			pos++;
+		}
+		return length;
+	}
+
+	public String next()
+	{
+		int length = readToken();
+		return new String(scratch, 0, length, StandardCharsets.ISO_8859_1);
+	}
+
+	public int nextInt()
+	{
+		int length = readToken();
+		int i=0;
+		boolean negative=false;
+		if(scratch[0]=='-'||scratch[0]=='+')
+		{
+			negative=scratch[0]=='-';
+			i++;
+		}
+		if(i==length)
+			throw new NumberFormatException(new String(scratch, 0, length, StandardCharsets.ISO_8859_1));
+		long result=0;
+		for(; i<length; i++)
+		{
+			int digit = scratch[i]-'0';
+			if(digit<0||digit>9)
+				throw new NumberFormatException(new String(scratch, 0, length, StandardCharsets.ISO_8859_1));
+			result=result*10+digit;
+			if(result>(long)Integer.MAX_VALUE+1)
+				throw new NumberFormatException(new String(scratch, 0, length, StandardCharsets.ISO_8859_1));
+		}
+		if(negative)
+			result=-result;
+		if(result>Integer.MAX_VALUE)
+			throw new NumberFormatException(new String(scratch, 0, length, StandardCharsets.ISO_8859_1));
+		return (int)result;
+	}
+
+	public double nextDouble()
+	{
+		int length = readToken();
+		int i=0;
+		boolean negative=false;
+		if(scratch[0]=='-'||scratch[0]=='+')
+		{
+			negative=scratch[0]=='-';
+			i++;
+		}
+		long mantissa=0;
+		boolean sawDigit=false;
+		int scale=0; //power of ten the mantissa is divided by
+		boolean seenPoint=false;
+		boolean exact=true;
+		for(; i<length; i++)
+		{
+			byte b = scratch[i];
+			if(b>='0'&&b<='9')
+			{
+				sawDigit=true;
+				if(mantissa<maxExactMantissa/10)
+				{
+					mantissa=mantissa*10+(b-'0');
+					if(seenPoint)
+						scale++;
+				}
+				else
+					exact=false;
+			}
+			else if(b=='.'&&!seenPoint)
+				seenPoint=true;
+			else if(b=='e'||b=='E')
+			{
+				int exponent=0;
+				boolean negativeExponent=false;
+				i++;
+				if(i<length&&(scratch[i]=='-'||scratch[i]=='+'))
+					negativeExponent=scratch[i++]=='-';
+				if(i==length)
+					exact=false;
+				for(; i<length; i++)
+				{
+					int digit = scratch[i]-'0';
+					if(digit<0||digit>9||exponent>1000)
+					{
+						exact=false;
+						break;
+					}
+					exponent=exponent*10+digit;
+				}
+				scale+=negativeExponent ? exponent : -exponent;
+				break;
+			}
+			else
+			{
+				exact=false;
+				break;
+			}
+		}
+		if(!exact||!sawDigit||scale>22||scale<-22)
+			return Double.parseDouble(new String(scratch, 0, length, StandardCharsets.ISO_8859_1));
+		double result = scale>=0 ? mantissa/powersOfTen[scale] : mantissa*powersOfTen[-scale];
+		return negative ? -result : result;
+	}
+
+	// releases the reference to the mapping; the pages are unmapped once the buffer is collected
+	public void close()
+	{
+		buffer=null;
+		limit=0;
+		pos=0;
+	}
+}
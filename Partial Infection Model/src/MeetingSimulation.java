@@ -0,0 +1,346 @@
+/* Simulation driven by individual class meetings.
+ *
+ * Rather than collapsing each weekday into a single contact budget, every day is processed as the course meetings
+ * held on that day. Each meeting applies its own clique of contacts, with as many contacts as the meeting lasts, so no
+ * per-hour graph snapshot ever needs to be built.
+ *
+ * The engine is still day-granular. Exposed students only become infectious in the end-of-day recovery check, after the
+ * latent period, so an infection in one meeting cannot spread in a later meeting of the same day. Meetings are applied
+ * in start-time order (Course.compareTo), but that order only decides which random numbers each meeting draws.
+ *
+ * The deterministic model weights each contact by StaticSimulation.getInfectiousness, with the same backflow
+ * correction and probability of not having recovered as StaticSimulation.
+ */
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+
+
+public class MeetingSimulation {
+	private ArrayList<ArrayList<Course>> meetingsPerDay; //time-sorted meetings for each weekday
+	private double tProbability;
+	private double contactsPerHour;
+	private ArrayList<Vertice> vertices;
+	private int day;
+	private int weekday; //0 through 4
+	private int startingWkDay;
+
+	private double totalEverInfected;
+	private double previousTotal;
+	private double currentTotal;
+	private double currentInfected;
+	private double peakInfected;
+	private int peakDayInfected;
+
+	private int latentPd;
+	private int infectiousPd;
+
+	ArrayList<double[]> cumulativeData;
+
+	public MeetingSimulation(ArrayList<ArrayList<Course>> coursesPerDay, ArrayList<Vertice> vertices, double tProbability, double contactsPerHour, int latentPd, int infectiousPd)
+	{
+		this.vertices=vertices;
+		this.tProbability=tProbability;
+		this.contactsPerHour=contactsPerHour;
+		this.latentPd=latentPd;
+		this.infectiousPd=infectiousPd;
+
+		meetingsPerDay = new ArrayList<>();
+		for(ArrayList<Course> cs: coursesPerDay)
+		{
+			ArrayList<Course> sorted = new ArrayList<>(cs);
+			Collections.sort(sorted);
+			meetingsPerDay.add(sorted);
+		}
+
+		day=0;
+		startingWkDay=0;
+		weekday=0;
+
+		previousTotal=0;
+		currentTotal=0;
+		currentInfected=0;
+		totalEverInfected=0;
+		peakInfected=0;
+		peakDayInfected=0;
+		cumulativeData = new ArrayList<>();
+
+		for(Vertice v: vertices)
+			v.setProperties(latentPd, infectiousPd);
+	}
+
+	public double getTransmissionProbability()
+	{
+		return tProbability;
+	}
+	public ArrayList<Course> getMeetings(int dayOfWeek)
+	{
+		return meetingsPerDay.get(dayOfWeek);
+	}
+	public void setStartDay(int day)
+	{
+		startingWkDay=day;
+		weekday=day;
+	}
+	public int getDay()
+	{
+		return day;
+	}
+	public int getWeekday()
+	{
+		return weekday;
+	}
+	public ArrayList<double[]> getData()
+	{
+		return cumulativeData;
+	}
+
+	public void reset(boolean affectVaccinated)
+	{
+		for(Vertice v: vertices)
+		{
+			if(affectVaccinated||!v.getVaccinationState())
+				v.reset();
+		}
+		day=0;
+		weekday=0;
+		startingWkDay=0;
+		currentTotal=0;
+		previousTotal=0;
+		totalEverInfected=0;
+		currentInfected=0;
+		peakInfected=0;
+		peakDayInfected=0;
+		cumulativeData = new ArrayList<>();
+	}
+	public void setInfected(Vertice input)
+	{
+		input.setState(Vertice.HealthState.infected);
+	}
+	public int getNumSusceptible()
+	{
+		int count=0;
+		for(Vertice v: vertices)
+			if(v.getState()==Vertice.HealthState.susceptible)
+				count++;
+		return count;
+	}
+	public int getNumExposed()
+	{
+		int count=0;
+		for(Vertice v: vertices)
+			if(v.getState()==Vertice.HealthState.exposed)
+				count++;
+		return count;
+	}
+	public int getNumInfected()
+	{
+		int count=0;
+		for(Vertice v: vertices)
+			if(v.getState()==Vertice.HealthState.infected)
+				count++;
+		return count;
+	}
+	public int getNumResistant()
+	{
+		int count=0;
+		for(Vertice v: vertices)
+			if(v.getState()==Vertice.HealthState.resistant)
+				count++;
+		return count;
+	}
+	public double getPeakInfected()
+	{
+		return peakInfected;
+	}
+	public int getPeakDayInfected()
+	{
+		return peakDayInfected;
+	}
+	public boolean hasRemaining()
+	{
+		for(Vertice v: vertices)
+			if(v.getState()==Vertice.HealthState.infected||v.getState()==Vertice.HealthState.exposed)
+				return true;
+		return false;
+	}
+
+	//Contacts a single student makes during one meeting of course c.
+	public double getMeetingContacts(Course c)
+	{
+		return c.getTime().getDuration()*contactsPerHour;
+	}
+
+	//Stochastic contacts for a single meeting. Each student picks uniformly random classmates for the length of the meeting.
+	public void runMeeting(Course c)
+	{
+		ArrayList<Vertice> students = c.getStudents();
+		if(students.size()<2)
+			return;
+		int contacts = (int)Math.round(getMeetingContacts(c));
+		int index;
+		Vertice other;
+		for(int i=0; i<students.size(); i++)
+		{
+			for(int j=0; j<contacts; j++)
+			{
+				index=(int)(Main.RNG.get().nextDouble()*(students.size()-1));
+				if(index>=i)
+					index++;
+				other=students.get(index);
+				transmit(students.get(i), other);
+				transmit(other, students.get(i));
+			}
+		}
+	}
+	private void transmit(Vertice target, Vertice source)
+	{
+		if(target.getState()==Vertice.HealthState.susceptible&&source.getState()==Vertice.HealthState.infected&&Main.RNG.get().nextDouble()<tProbability)
+		{
+			target.setState(Vertice.HealthState.exposed);
+			target.setDaysSinceExposed(0);
+		}
+	}
+
+	//A single timestep (day) in the stochastic model, applying each meeting of the weekday.
+	public void runDay()
+	{
+		for(Course c: meetingsPerDay.get(weekday))
+			runMeeting(c);
+		day++;
+		weekday = (startingWkDay + day) % meetingsPerDay.size();
+		for (Vertice v : vertices) {
+			v.checkRecovery();
+		}
+	}
+	public void simul()
+	{
+		while(hasRemaining())
+		{
+			cumulativeData.add(new double[] {getNumSusceptible(), getNumExposed(), getNumInfected(), getNumResistant()});
+			runDay();
+			if(cumulativeData.get(day-1)[2]>peakInfected)
+			{
+				peakInfected=cumulativeData.get(day-1)[2];
+				peakDayInfected=day-1;
+			}
+		}
+		cumulativeData.add(new double[] {getNumSusceptible(), getNumExposed(), getNumInfected(), getNumResistant()});
+	}
+
+	//	Functions for the deterministic version below:
+
+	public void setTrickler(Vertice v)
+	{
+		v.setCumulation(1.0);
+		v.getTracker()[latentPd-1].PNI=0;
+		v.setProbInfectedFromContacts(1);
+		v.setProbNotRecovered(1);
+	}
+
+	//Deterministic pressure for a single meeting. An infectious student spreads its meeting contacts evenly among its k-1 classmates.
+	//Cumulations only change in the end-of-day recovery check, so the meetings of a day can be applied in any order.
+	public void runTrickleMeeting(Course c)
+	{
+		ArrayList<Vertice> students = c.getStudents();
+		if(students.size()<2)
+			return;
+		double contacts = getMeetingContacts(c);
+		double perContact = tProbability/(students.size()-1);
+		for(Vertice v: students)
+		{
+			if(v.getCumulation()>0)
+			{
+				for(Vertice x: students)
+				{
+					if(x!=v)
+						x.compoundCumulation(1-Math.pow(1-StaticSimulation.getInfectiousness(v, x, latentPd)*perContact,contacts),v);
+				}
+			}
+		}
+	}
+	public void runTrickleDay()
+	{
+		for(Course c: meetingsPerDay.get(weekday))
+			runTrickleMeeting(c);
+		day++;
+		weekday=(startingWkDay+day)%meetingsPerDay.size();
+		for(Vertice v: vertices)
+		{
+			v.checkCumulationRecovery();
+		}
+	}
+	public void trickleSimul()
+	{
+		currentInfected = expectedNumInfected();
+		currentTotal=currentInfected;
+		while(Math.abs(currentTotal-previousTotal)>.5||currentTotal>0.5||day<20)
+		{
+			previousTotal=currentTotal;
+			showTrickle();
+			cumulativeData.add(new double[] {numSusceptible(), expectedNumExposed(), expectedNumInfected(), numRecovered()});
+			runTrickleDay();
+			currentInfected=expectedNumInfected();
+			if(currentInfected>peakInfected)
+			{
+				peakInfected=currentInfected;
+				peakDayInfected=day;
+			}
+			currentTotal=currentInfected+expectedNumExposed();
+			totalEverInfected+=currentInfected;
+		}
+		showTrickle();
+		cumulativeData.add(new double[] {numSusceptible(), expectedNumExposed(), expectedNumInfected(), numRecovered()});
+	}
+	public void showTrickle()
+	{
+		System.out.println("Day "+day + "\t"+ numSusceptible()+"\t"+ expectedNumExposed()+"\t"+expectedNumInfected()+"\t"+ numRecovered());
+	}
+	public void printTrickle(PrintWriter pw)
+	{
+		pw.println("Day "+day + "\t"+ numSusceptible()+"\t"+ expectedNumExposed()+"\t"+expectedNumInfected()+"\t"+ numRecovered());
+	}
+
+	public double expectedNumInfected()
+	{
+		double result=0;
+		for(Vertice v: vertices)
+			result+=v.getCumulation();
+		return result;
+	}
+	public double expectedNumExposed()
+	{
+		double result=0;
+		for(Vertice v: vertices)
+			result+=v.getProbNotRecovered()*(1-v.getProbInfectedFromContacts())*exposedProduct(v);
+		return result;
+	}
+	public double exposedProduct(Vertice v)
+	{
+		double result=1;
+		result*=v.getTodayTracker().PNI;
+		for(int i=0; i<latentPd-1; i++)
+			result*=v.getTracker()[i].PNI;
+		return 1-result;
+	}
+	public double numRecovered()
+	{
+		double result=0;
+		for(Vertice v: vertices)
+			if(!v.getVaccinationState())
+				result+=1-v.getProbNotRecovered();
+		return result;
+	}
+	public double numSusceptible()
+	{
+		double result=0;
+		for(Vertice v: vertices)
+			result+=v.getProbNotRecovered()*(1-v.getProbInfectedFromContacts())*(1-exposedProduct(v));
+		return result;
+	}
+	public double getTotalEverInfected()
+	{
+		return totalEverInfected/(infectiousPd);
+	}
+}
@@ -0,0 +1,177 @@
+/* MinHash signatures with LSH banding, for finding similar communities across many partitions (weekdays, semesters)
+ * without computing the Jaccard index of every pair.
+ *
+ * Each community gets a signature of numHashes minimum hash values over its members. The probability that two signatures
+ * agree at one position is their Jaccard index, so splitting the signature into bands of rows values and bucketing the
+ * communities by each band makes pairs with Jaccard index s collide in some band with probability 1-(1-s^rows)^bands.
+ * Colliding pairs from different partitions are candidates, and only those are checked with the exact Jaccard index.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.stream.IntStream;
+
+public class MinHashIndex {
+	private int numHashes;
+	private int bands;
+	private int rows;
+	private long[] seeds;
+	private ArrayList<Community> communities;
+	private ArrayList<Integer> partitions; //partition each community was added from
+	private ArrayList<long[]> signatures;
+
+	public static class Match
+	{
+		public Community c1;
+		public Community c2;
+		public int partition1;
+		public int partition2;
+		public double jaccard;
+
+		public Match(Community c1, int partition1, Community c2, int partition2, double jaccard)
+		{
+			this.c1=c1;
+			this.partition1=partition1;
+			this.c2=c2;
+			this.partition2=partition2;
+			this.jaccard=jaccard;
+		}
+	}
+
+	/*	Input:
+	 * 	numHashes: signature length, a multiple of bands
+	 * 	bands: more bands find pairs of lower similarity, at the cost of more candidates
+	 * 	seed: for the hash functions, so runs are repeatable
+	 */
+	public MinHashIndex(int numHashes, int bands, long seed)
+	{
+		if(bands<=0||numHashes%bands!=0)
+			throw new IllegalArgumentException("numHashes ("+numHashes+") must be a multiple of bands ("+bands+")");
+		this.numHashes=numHashes;
+		this.bands=bands;
+		rows=numHashes/bands;
+		seeds = new long[numHashes];
+		for(int i=0; i<numHashes; i++)
+			seeds[i]=mix(seed+(i+1)*0x9E3779B97F4A7C15L);
+		communities = new ArrayList<>();
+		partitions = new ArrayList<>();
+		signatures = new ArrayList<>();
+	}
+	// 128 hashes in 32 bands of 4: pairs above a Jaccard index of about 0.4 are likely to be candidates
+	public MinHashIndex()
+	{
+		this(128, 32, 743);
+	}
+
+	// Adds every community of a partition, e.g. the output of CommunityAnalysis.convertFormat
+	public void addPartition(int partition, ArrayList<Community> list)
+	{
+		long[][] computed = new long[list.size()][];
+		IntStream.range(0, list.size()).parallel().forEach(i -> computed[i]=signature(list.get(i).list));
+		for(int i=0; i<list.size(); i++)
+		{
+			communities.add(list.get(i));
+			partitions.add(partition);
+			signatures.add(computed[i]);
+		}
+	}
+
+	private long[] signature(ArrayList<String> members)
+	{
+		long[] result = new long[numHashes];
+		Arrays.fill(result, Long.MAX_VALUE);
+		long h;
+		for(String s: members)
+		{
+			h=hash(s);
+			for(int i=0; i<numHashes; i++)
+				result[i]=Math.min(result[i], mix(h^seeds[i]));
+		}
+		return result;
+	}
+	// 64 bit hash of a vertex ID, so distinct IDs of large data sets rarely collide
+	private static long hash(String s)
+	{
+		long h=1125899906842597L;
+		for(int i=0; i<s.length(); i++)
+			h=31*h+s.charAt(i);
+		return mix(h);
+	}
+	private static long mix(long z)
+	{
+		z=(z^(z>>>30))*0xBF58476D1CE4E5B9L;
+		z=(z^(z>>>27))*0x94D049BB133111EBL;
+		return z^(z>>>31);
+	}
+
+	/*	Pairs of communities from different partitions that share a bucket in at least one band, keyed by
+	 * 	(long)i<<32|j with i<j their positions in insertion order. The value is the number of bands they share.
+	 */
+	public LongDoubleMap getCandidates()
+	{
+		LongDoubleMap result = new LongDoubleMap(communities.size());
+		HashMap<Long, ArrayList<Integer>> buckets = new HashMap<>();
+		long key;
+		for(int b=0; b<bands; b++)
+		{
+			buckets.clear();
+			for(int c=0; c<communities.size(); c++)
+			{
+				key=b;
+				for(int r=b*rows; r<(b+1)*rows; r++)
+					key=mix(key^signatures.get(c)[r]);
+				buckets.computeIfAbsent(key, k -> new ArrayList<>()).add(c);
+			}
+			for(ArrayList<Integer> bucket: buckets.values())
+				for(int x=0; x<bucket.size(); x++)
+					for(int y=x+1; y<bucket.size(); y++)
+						if(!partitions.get(bucket.get(x)).equals(partitions.get(bucket.get(y))))
+							result.add((long)bucket.get(x)<<32|bucket.get(y), 1);
+		}
+		return result;
+	}
+
+	// Candidate pairs whose exact Jaccard index is at least threshold, most similar first
+	public ArrayList<Match> findSimilar(double threshold)
+	{
+		long[] candidates = getCandidates().getKeys();
+		double[] jaccard = new double[candidates.length];
+		IntStream.range(0, candidates.length).parallel().forEach(p ->
+			jaccard[p]=CommunityAnalysis.jaccardIndex(communities.get((int)(candidates[p]>>>32)), communities.get((int)candidates[p])));
+		ArrayList<Match> result = new ArrayList<>();
+		int i;
+		int j;
+		for(int p=0; p<candidates.length; p++)
+		{
+			if(jaccard[p]<threshold)
+				continue;
+			i=(int)(candidates[p]>>>32);
+			j=(int)candidates[p];
+			result.add(new Match(communities.get(i), partitions.get(i), communities.get(j), partitions.get(j), jaccard[p]));
+		}
+		Collections.sort(result, new Comparator<Match>() {
+			@Override
+			public int compare(Match m1, Match m2) {
+				return Double.compare(m2.jaccard, m1.jaccard);
+			}
+		});
+		return result;
+	}
+
+	// Signature estimate of the Jaccard index of the communities at positions i and j
+	public double estimateJaccard(int i, int j)
+	{
+		int same=0;
+		for(int h=0; h<numHashes; h++)
+			if(signatures.get(i)[h]==signatures.get(j)[h])
+				same++;
+		return (double)same/numHashes;
+	}
+	public int size()
+	{
+		return communities.size();
+	}
+}
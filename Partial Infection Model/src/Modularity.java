@@ -0,0 +1,176 @@
+/* Modularity of a partition of a CSRGraph, kept up to date as single vertices move between communities.
+ *
+ * Communities are stored as dense ints, so the per-community sums are plain arrays: inside[c] is the weight of arcs with
+ * both ends in c (each edge twice, self loops once) and total[c] the sum of the degrees of its members. Building them is
+ * one pass over the arcs, split over vertices in parallel, followed by a linear sum per community.
+ *
+ * gain(v, c) costs O(degree of v), so local search loops (community detection, vaccine placement) can test moves without
+ * recomputing Q = sum over c of inside[c]/2m - resolution*(total[c]/2m)^2.
+ */
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+public class Modularity {
+	private CSRGraph graph;
+	private boolean weighted;
+	private double resolution;
+	private double totalWeight; //2m
+	private double[] degree;
+	private int[] community; //dense community of each vertex
+	private int[] IDs; //label of each dense community
+	private double[] inside;
+	private double[] total;
+
+	/*	Input:
+	 * 	labels: community of each vertex, any ints
+	 * 	weighted: if false every edge counts 1
+	 * 	resolution: 1 for standard modularity
+	 */
+	public Modularity(CSRGraph graph, int[] labels, boolean weighted, double resolution)
+	{
+		this.graph=graph;
+		this.weighted=weighted;
+		this.resolution=resolution;
+		int n = graph.getNumVertices();
+		IDs = labels.clone();
+		Arrays.parallelSort(IDs);
+		int k=0;
+		for(int i=0; i<n; i++)
+			if(k==0||IDs[k-1]!=IDs[i])
+				IDs[k++]=IDs[i];
+		IDs = Arrays.copyOf(IDs, k);
+		community = new int[n];
+		IntStream.range(0, n).parallel().forEach(v -> community[v]=Arrays.binarySearch(IDs, labels[v]));
+
+		degree = new double[n];
+		double[] insideOf = new double[n]; //weight from each vertex into its own community
+		int[] offsets = graph.getOffsets();
+		int[] targets = graph.getTargets();
+		double[] weights = graph.getWeights();
+		IntStream.range(0, n).parallel().forEach(v -> {
+			double w;
+			for(int a=offsets[v]; a<offsets[v+1]; a++)
+			{
+				w = weighted ? weights[a] : 1;
+				degree[v]+=w;
+				if(community[targets[a]]==community[v])
+					insideOf[v]+=w;
+			}
+		});
+		inside = new double[k];
+		total = new double[k];
+		totalWeight=0;
+		for(int v=0; v<n; v++)
+		{
+			inside[community[v]]+=insideOf[v];
+			total[community[v]]+=degree[v];
+			totalWeight+=degree[v];
+		}
+	}
+
+	public double getModularity()
+	{
+		if(totalWeight==0)
+			return 0;
+		double result=0;
+		for(int c=0; c<inside.length; c++)
+			result+=inside[c]/totalWeight-resolution*(total[c]/totalWeight)*(total[c]/totalWeight);
+		return result;
+	}
+
+	// Change in modularity if v moved to dense community target
+	public double gain(int v, int target)
+	{
+		int own = community[v];
+		if(target==own)
+			return 0;
+		return gain(v, own, target, weightsTo(v, own, target));
+	}
+	private double gain(int v, int own, int target, double[] w)
+	{
+		if(totalWeight==0)
+			return 0;
+		return 2*(w[1]-w[0])/totalWeight-2*resolution*degree[v]*(total[target]-(total[own]-degree[v]))/(totalWeight*totalWeight);
+	}
+
+	// Moves v to dense community target and returns the change in modularity
+	public double move(int v, int target)
+	{
+		int own = community[v];
+		if(target==own)
+			return 0;
+		double[] w = weightsTo(v, own, target);
+		double result = gain(v, own, target, w);
+		inside[own]-=2*w[0]+w[2];
+		inside[target]+=2*w[1]+w[2];
+		total[own]-=degree[v];
+		total[target]+=degree[v];
+		community[v]=target;
+		return result;
+	}
+
+	// {weight from v to the rest of own, weight from v to target, weight of v's self loops}
+	private double[] weightsTo(int v, int own, int target)
+	{
+		int[] offsets = graph.getOffsets();
+		int[] targets = graph.getTargets();
+		double[] weights = graph.getWeights();
+		double[] result = new double[3];
+		double w;
+		int c;
+		for(int a=offsets[v]; a<offsets[v+1]; a++)
+		{
+			w = weighted ? weights[a] : 1;
+			c=community[targets[a]];
+			if(targets[a]==v)
+				result[2]+=w;
+			else if(c==own)
+				result[0]+=w;
+			else if(c==target)
+				result[1]+=w;
+		}
+		return result;
+	}
+
+	public int getNumCommunities()
+	{
+		return IDs.length;
+	}
+	// dense community of v
+	public int getCommunity(int v)
+	{
+		return community[v];
+	}
+	// label of dense community c
+	public int getCommunityID(int c)
+	{
+		return IDs[c];
+	}
+	// dense community with label ID, -1 if no vertex had it
+	public int getCommunityIndex(int ID)
+	{
+		int c = Arrays.binarySearch(IDs, ID);
+		return c<0 ? -1 : c;
+	}
+	public double getCommunityDegree(int c)
+	{
+		return total[c];
+	}
+	public double getInsideWeight(int c)
+	{
+		return inside[c];
+	}
+	public double getDegree(int v)
+	{
+		return degree[v];
+	}
+	public double getTotalWeight()
+	{
+		return totalWeight;
+	}
+	public double getResolution()
+	{
+		return resolution;
+	}
+}
@@ -0,0 +1,153 @@
+/* Vertices ranked by one trait (a centrality index or FC), for vaccinating the top or bottom numOfVaccines of a list.
+ *
+ * The keys are copied into a double array once, so comparisons do not unbox centralities.get(traitID). The first k of
+ * either end come from a bounded binary heap in O(n log k), and the ranked prefix is kept, so rerunning a strategy with
+ * another budget only selects again when the budget grows past it.
+ *
+ * Ties are broken by position in the list: ascending by (key, position), the high end is taken from the back. This picks
+ * the same vertices as sorting the list with a stable sort and reading it from either end, as the strategies used to.
+ */
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+public class Ranking {
+	private ArrayList<Vertice> vertices;
+	private double[] keys;
+	private int[] highest; //positions ranked from the high end, as far as computed
+	private int[] lowest;
+
+	public Ranking(ArrayList<Vertice> vertices, double[] keys)
+	{
+		this.vertices=vertices;
+		this.keys=keys;
+		highest = new int[0];
+		lowest = new int[0];
+	}
+	// Ranks vertices by centralities.get(traitID)
+	public Ranking(ArrayList<Vertice> vertices, int traitID)
+	{
+		this(vertices, new double[vertices.size()]);
+		for(int i=0; i<vertices.size(); i++)
+			keys[i]=vertices.get(i).centralities.get(traitID);
+	}
+	public static Ranking byFC(ArrayList<Vertice> vertices)
+	{
+		double[] keys = new double[vertices.size()];
+		for(int i=0; i<vertices.size(); i++)
+			keys[i]=vertices.get(i).FC;
+		return new Ranking(vertices, keys);
+	}
+	// One ranking of each community's members by traitID, in the order of commMap's lists
+	public static HashMap<Integer, Ranking> byCommunity(HashMap<Integer, ArrayList<String>> commMap, HashMap<String, Vertice> map, int traitID)
+	{
+		HashMap<Integer, Ranking> result = new HashMap<>();
+		ArrayList<Vertice> members;
+		for(Integer x: commMap.keySet())
+		{
+			members = new ArrayList<>();
+			for(String s: commMap.get(x))
+				members.add(map.get(s));
+			result.put(x, new Ranking(members, traitID));
+		}
+		return result;
+	}
+
+	// The k vertices with the highest keys if pickHigh, else the lowest, best first. All of them if k exceeds the size.
+	public ArrayList<Vertice> top(int k, boolean pickHigh)
+	{
+		k=Math.max(0, Math.min(k, keys.length));
+		int[] ranked = pickHigh ? highest : lowest;
+		if(ranked.length<k)
+		{
+			// grow geometrically, so a sweep over budgets selects O(log n) times
+			ranked=select(keys, Math.min(keys.length, Math.max(k, 2*ranked.length)), pickHigh);
+			if(pickHigh)
+				highest=ranked;
+			else
+				lowest=ranked;
+		}
+		ArrayList<Vertice> result = new ArrayList<>(k);
+		for(int i=0; i<k; i++)
+			result.add(vertices.get(ranked[i]));
+		return result;
+	}
+	public int size()
+	{
+		return keys.length;
+	}
+
+	/*	Positions of the k largest (high) or smallest keys, best first, with ties as described above.
+	 * 	A heap of the k best so far has the worst of them at its root, and a key only enters by beating it.
+	 */
+	public static int[] select(double[] keys, int k, boolean high)
+	{
+		k=Math.max(0, Math.min(k, keys.length));
+		int[] heap = new int[k];
+		if(k==0)
+			return heap;
+		int size=0;
+		for(int i=0; i<keys.length; i++)
+		{
+			if(size<k)
+			{
+				heap[size]=i;
+				siftUp(heap, size++, keys, high);
+			}
+			else if(better(i, heap[0], keys, high))
+			{
+				heap[0]=i;
+				siftDown(heap, 0, size, keys, high);
+			}
+		}
+		// heap sort: the root is the worst remaining, so it goes to the back
+		int worst;
+		for(int end=k-1; end>0; end--)
+		{
+			worst=heap[0];
+			heap[0]=heap[end];
+			heap[end]=worst;
+			siftDown(heap, 0, end, keys, high);
+		}
+		return heap;
+	}
+
+	// Whether position a ranks before position b
+	private static boolean better(int a, int b, double[] keys, boolean high)
+	{
+		int c = Double.compare(keys[a], keys[b]);
+		if(c==0)
+			c=Integer.compare(a, b);
+		return high ? c>0 : c<0;
+	}
+	private static void siftUp(int[] heap, int i, double[] keys, boolean high)
+	{
+		int x=heap[i];
+		int parent;
+		while(i>0)
+		{
+			parent=(i-1)/2;
+			if(!better(heap[parent], x, keys, high))
+				break;
+			heap[i]=heap[parent];
+			i=parent;
+		}
+		heap[i]=x;
+	}
+	private static void siftDown(int[] heap, int i, int size, double[] keys, boolean high)
+	{
+		int x=heap[i];
+		int child;
+		while(2*i+1<size)
+		{
+			child=2*i+1;
+			if(child+1<size&&better(heap[child], heap[child+1], keys, high))
+				child++;
+			if(!better(x, heap[child], keys, high))
+				break;
+			heap[i]=heap[child];
+			i=child;
+		}
+		heap[i]=x;
+	}
+}
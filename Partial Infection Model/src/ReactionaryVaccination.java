@@ -0,0 +1,144 @@
+/* Reactionary vaccination experiments with the target communities run concurrently, as Main.runReactionaryVaccDS/SS.
+ *
+ * For every target community, the ring strategy vaccinates around it, each member is used once as the initial infected
+ * vertex, and the vaccinations are cleared again, so the communities are independent. The simulations keep their state in
+ * the vertices, so every worker thread materializes its own vertices and graphs from the snapshot, as the jobs of
+ * ExperimentRunner do, while the meta-graph and its distances are shared read-only.
+ *
+ * The totals of each community are kept apart and joined in commMap order before the statistics are taken, so the
+ * result is the one of the serial loop for any number of threads. Monte Carlo runs draw from a generator split per
+ * community in that order. Their totals are the number recovered, as in ExperimentRunner, since the expected total ever
+ * infected is only tracked by the deterministic model.
+ */
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+public class ReactionaryVaccination {
+	private GraphSnapshot snapshot;
+	private boolean fullGraph;
+	private double T;
+	private int latent;
+	private int infectious;
+
+	/*	Input:
+	 * 	snapshot: graphs to simulate on, G_F if fullGraph is true, else the weekday graphs
+	 * 	T, latent, infectious: parameters of the simulation
+	 */
+	public ReactionaryVaccination(GraphSnapshot snapshot, boolean fullGraph, double T, int latent, int infectious)
+	{
+		this.snapshot=snapshot;
+		this.fullGraph=fullGraph;
+		this.T=T;
+		this.latent=latent;
+		this.infectious=infectious;
+	}
+
+	// One thread's copy of the simulation state, with the community rankings of its own vertices
+	private class Worker
+	{
+		private HashMap<String, Vertice> map;
+		private StaticSimulation SS;
+		private DynamicSimulation DS;
+		private HashMap<Integer, Ranking> rankings;
+
+		Worker(HashMap<Integer, ArrayList<String>> commMap, int traitID)
+		{
+			ArrayList<Vertice> vertices = snapshot.createVertices(Main.numDayGraphs);
+			map = new HashMap<>();
+			for(Vertice v: vertices)
+				map.put(v.getID(), v);
+			if(fullGraph&&Main.useCompactGraph)
+				SS = new StaticSimulation(snapshot.getCompactLayer(0), vertices, T, latent, infectious);
+			else if(fullGraph)
+				SS = new StaticSimulation(snapshot.createGraphs(vertices)[0], T, latent, infectious);
+			if(SS!=null)
+				SS.setVerbose(false);
+			else
+			{
+				DS = new DynamicSimulation(snapshot.createGraphs(vertices), vertices, T, latent, infectious);
+				DS.setVerbose(false);
+			}
+			rankings = Ranking.byCommunity(commMap, map, traitID);
+		}
+
+		// Total of each run with the ring around targetCommID vaccinated, one per member of the community
+		double[] runCommunity(Graph Meta, double[][] dist, HashMap<Integer, ArrayList<String>> commMap, int targetCommID, int vaccines, boolean pickHigh, boolean monteCarlo)
+		{
+			Main.runRingVacc(Meta, commMap, dist, targetCommID, vaccines, rankings, pickHigh);
+			ArrayList<String> members = commMap.get(targetCommID);
+			double[] result = new double[members.size()];
+			Vertice current;
+			for(int i=0; i<members.size(); i++)
+			{
+				current=map.get(members.get(i));
+				if(SS!=null)
+				{
+					if(monteCarlo)
+					{
+						SS.setInfected(current);
+						SS.simul();
+						result[i]=SS.getNumResistant();
+					}
+					else
+					{
+						SS.setTrickler(current);
+						SS.trickleSimul();
+						result[i]=SS.getTotalEverInfected();
+					}
+					SS.reset(false);
+				}
+				else
+				{
+					DS.setTrickler(current);
+					DS.setStartDay(current.getStartingPoint());
+					DS.trickleSimul();
+					result[i]=DS.getTotalEverInfected();
+					DS.reset(false);
+				}
+			}
+			if(SS!=null)
+				SS.reset(true);
+			else
+				DS.reset(true);
+			return result;
+		}
+	}
+
+	/*	Input: as Main.runReactionaryVaccSS. monteCarlo is only used on G_F, the weekday graphs always use PIM as
+	 * 	runReactionaryVaccDS does.
+	 * 	Prints and returns {mean, stdDev, stdError} of the totals of all runs.
+	 */
+	public double[] run(Graph Meta, double[][] dist, HashMap<Integer, ArrayList<String>> commMap, int vaccines, int traitID, boolean pickHigh, boolean monteCarlo)
+	{
+		ArrayList<Integer> targets = new ArrayList<>(commMap.keySet());
+		long[] seeds = new long[targets.size()];
+		SplittableRandom root = new SplittableRandom(Main.RNG.get().nextLong());
+		for(int c=0; c<seeds.length; c++)
+			seeds[c]=root.split().nextLong();
+		double[][] totals = new double[targets.size()][];
+		// one worker per thread for this run only, each claiming the next community until none are left
+		AtomicInteger next = new AtomicInteger();
+		IntStream.range(0, Math.min(Runtime.getRuntime().availableProcessors(), targets.size())).parallel().forEach(w -> {
+			Worker worker = new Worker(commMap, traitID);
+			SeededRandom previous = Main.RNG.get();
+			for(int c=next.getAndIncrement(); c<targets.size(); c=next.getAndIncrement())
+			{
+				Main.RNG.set(new SeededRandom(seeds[c]));
+				totals[c]=worker.runCommunity(Meta, dist, commMap, targets.get(c), vaccines, pickHigh, monteCarlo);
+			}
+			Main.RNG.set(previous);
+		});
+
+		ArrayList<Double> analysisArray = new ArrayList<>();
+		for(double[] community: totals)
+			for(double total: community)
+				analysisArray.add(total);
+		double[] result = {Main.getMean(analysisArray), Main.getstdDev(analysisArray), Main.getstdError(analysisArray)};
+		System.out.println(result[0]+"\t"+result[1]+"\t"+result[2]);
+		return result;
+	}
+}
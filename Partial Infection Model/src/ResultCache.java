@@ -0,0 +1,252 @@
+/* On-disk cache of deterministic PIM runs, keyed by a SHA-256 hash of everything trickleSimul depends on.
+ *
+ * The key covers the graph layers (vertex order, edges and weights), the contacts per day of each vertex, T, alpha, gamma,
+ * the starting weekday, the set of initially infected vertices and the set of vaccinated vertices. Each entry stores the
+ * result of the run as the simulation wrote it: day, totals, peak, the daily S/E/I/R series and a short final record of
+ * every vertex (state, cumulation, probability of not having recovered), in one file per key. When the files exceed
+ * maxBytes the least recently used entries are deleted. File modification times record use, so the order survives restarts.
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class ResultCache {
+	static final int magic=0x50494D52; //"PIMR"
+	static final int version=3;
+	static final String suffix=".result";
+
+	private File directory;
+	private long maxBytes;
+	private long totalBytes;
+	private LinkedHashMap<String, Long> entries; //key to file size, least recently used first
+
+	public ResultCache(File directory, long maxBytes) throws IOException
+	{
+		this.directory=directory;
+		this.maxBytes=maxBytes;
+		if(!directory.isDirectory()&&!directory.mkdirs())
+			throw new IOException("Cannot create cache directory "+directory);
+		entries = new LinkedHashMap<>(16, 0.75f, true);
+		File[] files = directory.listFiles((dir, name) -> name.endsWith(suffix));
+		Arrays.sort(files, new Comparator<File>() {
+			@Override
+			public int compare(File f1, File f2) {
+				return Long.compare(f1.lastModified(), f2.lastModified());
+			}
+		});
+		totalBytes=0;
+		for(File f: files)
+		{
+			entries.put(f.getName().substring(0, f.getName().length()-suffix.length()), f.length());
+			totalBytes+=f.length();
+		}
+		evict();
+	}
+
+	/*	Hashes the parts of a simulation that do not change between runs.
+	 * 	Input:
+	 * 	kind: SimulationCheckpoint.staticKind or dynamicKind
+	 * 	layers: the simulation's graphs
+	 * 	vertices: the simulation's vertices, in the order used for run keys
+	 */
+	public static byte[] fingerprint(int kind, Graph[] layers, ArrayList<Vertice> vertices, double tProbability, int latentPd, int infectiousPd)
+	{
+		MessageDigest digest = newDigest();
+		ByteBuffer b = ByteBuffer.allocate(24);
+		b.putInt(version).putInt(kind).putDouble(tProbability).putInt(latentPd).putInt(infectiousPd);
+		digest.update(b.array());
+		HashMap<Vertice, Integer> positions = new HashMap<>();
+		for(Vertice v: vertices)
+		{
+			positions.put(v, positions.size());
+			digest.update(v.getID().getBytes(StandardCharsets.ISO_8859_1));
+			digest.update((byte)0);
+			for(Double d: v.getContactsPerDay())
+				updateDouble(digest, d);
+		}
+		for(Graph G: layers)
+		{
+			b.clear();
+			b.putInt(G.getDayID()).putInt(G.getEdges().size());
+			digest.update(b.array(), 0, 8);
+			for(Edge e: G.getEdges())
+			{
+				b.clear();
+				b.putInt(position(positions, e.getSource())).putInt(position(positions, e.getTarget())).putDouble(e.getWeight());
+				digest.update(b.array(), 0, 16);
+			}
+		}
+		return digest.digest();
+	}
+	// Same as above for a StaticSimulation running on a CompactGraph
+	public static byte[] fingerprint(CompactGraph graph, ArrayList<Vertice> vertices, double tProbability, int latentPd, int infectiousPd)
+	{
+		MessageDigest digest = newDigest();
+		ByteBuffer b = ByteBuffer.allocate(24);
+		b.putInt(version).putInt(SimulationCheckpoint.staticKind).putDouble(tProbability).putInt(latentPd).putInt(infectiousPd);
+		digest.update(b.array());
+		for(Vertice v: vertices)
+		{
+			digest.update(v.getID().getBytes(StandardCharsets.ISO_8859_1));
+			digest.update((byte)0);
+			for(Double d: v.getContactsPerDay())
+				updateDouble(digest, d);
+		}
+		updateDouble(digest, graph.getScale());
+		for(int v=0; v<graph.getNumVertices(); v++)
+		{
+			b.clear();
+			b.putInt(graph.getDegree(v));
+			digest.update(b.array(), 0, 4);
+		}
+		digest.update(graph.getNeighborBytes());
+		for(short q: graph.getQuantizedWeights())
+		{
+			digest.update((byte)(q>>8));
+			digest.update((byte)q);
+		}
+		return digest.digest();
+	}
+	private static int position(HashMap<Vertice, Integer> positions, Vertice v)
+	{
+		Integer result = positions.get(v);
+		return result==null ? -1 : result;
+	}
+
+	// Key of a run starting from the current vertex states: tricklers are the vertices with cumulation above 0
+	public static String getKey(byte[] fingerprint, ArrayList<Vertice> vertices, int startDay)
+	{
+		MessageDigest digest = newDigest();
+		digest.update(fingerprint);
+		ByteBuffer b = ByteBuffer.allocate(8);
+		b.putInt(startDay);
+		digest.update(b.array(), 0, 4);
+		Vertice v;
+		for(int i=0; i<vertices.size(); i++)
+		{
+			v=vertices.get(i);
+			if(v.getCumulation()>0||v.getVaccinationState())
+			{
+				b.clear();
+				b.putInt(v.getVaccinationState() ? ~i : i);
+				digest.update(b.array(), 0, 4);
+				updateDouble(digest, v.getCumulation());
+			}
+		}
+		StringBuilder key = new StringBuilder();
+		for(byte x: digest.digest())
+			key.append(String.format("%02x", x));
+		return key.toString();
+	}
+
+	private static MessageDigest newDigest()
+	{
+		try
+		{
+			return MessageDigest.getInstance("SHA-256");
+		}
+		catch(NoSuchAlgorithmException e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+	private static void updateDouble(MessageDigest digest, double d)
+	{
+		long bits = Double.doubleToLongBits(d);
+		for(int i=56; i>=0; i-=8)
+			digest.update((byte)(bits>>>i));
+	}
+
+	// The state stored under key, null on a miss
+	public synchronized byte[] get(String key)
+	{
+		if(!entries.containsKey(key))
+			return null;
+		File file = new File(directory, key+suffix);
+		try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file))))
+		{
+			if(in.readInt()!=magic||in.readInt()!=version)
+				throw new IOException(file+" is not a cached result");
+			byte[] result = new byte[in.readInt()];
+			in.readFully(result);
+			entries.get(key); //marks as recently used
+			file.setLastModified(System.currentTimeMillis());
+			return result;
+		}
+		catch(IOException e)
+		{
+			// deleted or damaged behind our back; drop it and simulate again
+			totalBytes-=entries.remove(key);
+			file.delete();
+			return null;
+		}
+	}
+
+	public synchronized void put(String key, byte[] state)
+	{
+		File file = new File(directory, key+suffix);
+		File temp = new File(directory, key+".tmp");
+		try
+		{
+			try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp))))
+			{
+				out.writeInt(magic);
+				out.writeInt(version);
+				out.writeInt(state.length);
+				out.write(state);
+			}
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch(IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+		Long previous = entries.put(key, file.length());
+		if(previous!=null)
+			totalBytes-=previous;
+		totalBytes+=file.length();
+		evict();
+	}
+
+	private void evict()
+	{
+		Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+		Map.Entry<String, Long> oldest;
+		while(totalBytes>maxBytes&&it.hasNext())
+		{
+			oldest=it.next();
+			totalBytes-=oldest.getValue();
+			new File(directory, oldest.getKey()+suffix).delete();
+			it.remove();
+		}
+	}
+
+	public synchronized int size()
+	{
+		return entries.size();
+	}
+	public synchronized long getTotalBytes()
+	{
+		return totalBytes;
+	}
+}
@@ -0,0 +1,110 @@
+/* Ring vaccination around an index case: every contact within a number of hops of it, nearest rings first.
+ *
+ * A level-synchronous BFS over the CSR adjacency of the graph with a visited bitset looks at each vertex and arc at most
+ * once, so a ring of depth d costs O(arcs within d-1 hops) instead of the O(degree^d) of following every path. Each level
+ * is sorted by vertex position before it is vaccinated, so when the budget runs out inside a level the same vertices are
+ * chosen whether the level was expanded sequentially or in parallel.
+ */
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.IntStream;
+
+public class RingVaccination {
+	static final int chunkSize=256; //frontier vertices per parallel task
+
+	/*	Vaccinates the vertices within depth hops of source in G, not source itself.
+	 * 	minWeight: only edges of at least this weight are followed, 0 for all
+	 * 	budget: most vertices to vaccinate, vertices that already were do not count. Negative for no limit.
+	 * 	parallel: expand large frontiers in parallel
+	 * 	Returns the number of vertices vaccinated.
+	 */
+	public static int vaccinate(Graph G, Vertice source, int depth, double minWeight, int budget, boolean parallel)
+	{
+		CSRGraph graph = G.getCSR();
+		int start = G.getPosition(source);
+		if(start<0)
+			return 0;
+		AtomicLongArray visited = new AtomicLongArray((graph.getNumVertices()+63)/64);
+		visit(visited, start);
+		int[] frontier = {start};
+		int vaccinated=0;
+		Vertice v;
+		for(int level=0; level<depth&&frontier.length>0; level++)
+		{
+			frontier = parallel&&frontier.length>chunkSize ? expandParallel(graph, frontier, minWeight, visited) : expand(graph, frontier, minWeight, visited);
+			Arrays.sort(frontier);
+			for(int u: frontier)
+			{
+				if(budget>=0&&vaccinated>=budget)
+					return vaccinated;
+				v=G.getVertices().get(u);
+				if(v.getVaccinationState())
+					continue;
+				v.setVaccinationState(true);
+				v.setProbNotRecovered(0);
+				vaccinated++;
+			}
+		}
+		return vaccinated;
+	}
+
+	// Unvisited neighbors of frontier over edges of at least minWeight, marked visited
+	private static int[] expand(CSRGraph graph, int[] frontier, double minWeight, AtomicLongArray visited)
+	{
+		return expand(graph, frontier, 0, frontier.length, minWeight, visited);
+	}
+	private static int[] expand(CSRGraph graph, int[] frontier, int from, int to, double minWeight, AtomicLongArray visited)
+	{
+		int[] offsets = graph.getOffsets();
+		int[] targets = graph.getTargets();
+		double[] weights = graph.getWeights();
+		int[] next = new int[16];
+		int size=0;
+		for(int i=from; i<to; i++)
+		{
+			for(int a=offsets[frontier[i]]; a<offsets[frontier[i]+1]; a++)
+			{
+				if(weights[a]<minWeight||!visit(visited, targets[a]))
+					continue;
+				if(size==next.length)
+					next = Arrays.copyOf(next, 2*size);
+				next[size++]=targets[a];
+			}
+		}
+		return Arrays.copyOf(next, size);
+	}
+	// Same as expand, with the frontier split into chunks that claim vertices through the shared bitset
+	private static int[] expandParallel(CSRGraph graph, int[] frontier, double minWeight, AtomicLongArray visited)
+	{
+		int[][] parts = new int[(frontier.length+chunkSize-1)/chunkSize][];
+		IntStream.range(0, parts.length).parallel().forEach(c ->
+			parts[c]=expand(graph, frontier, c*chunkSize, Math.min(frontier.length, (c+1)*chunkSize), minWeight, visited));
+		int size=0;
+		for(int[] part: parts)
+			size+=part.length;
+		int[] next = new int[size];
+		size=0;
+		for(int[] part: parts)
+		{
+			System.arraycopy(part, 0, next, size, part.length);
+			size+=part.length;
+		}
+		return next;
+	}
+
+	// Marks v visited. Returns false if it already was.
+	private static boolean visit(AtomicLongArray visited, int v)
+	{
+		long bit = 1L<<(v&63);
+		long word;
+		do
+		{
+			word=visited.get(v>>>6);
+			if((word&bit)!=0)
+				return false;
+		}
+		while(!visited.compareAndSet(v>>>6, word, word|bit));
+		return true;
+	}
+}
@@ -0,0 +1,52 @@
+/* The random number generator of the stochastic models (Main.RNG): a SplittableRandom that also remembers its seed and
+ * how many numbers it has drawn.
+ *
+ * SplittableRandom's state cannot be read back, but each nextLong or nextDouble advances it by exactly one step, so the
+ * seed and the number of draws determine it. Checkpoints store those two, so capturing a checkpoint does not change the
+ * numbers a run draws. A generator made with new SplittableRandom(seed) steps its seed by the fixed gamma below, so a
+ * restored one starts from seed+draws*gamma in constant time instead of replaying the draws.
+ */
+
+import java.util.SplittableRandom;
+
+public class SeededRandom {
+	static final long gamma=0x9E3779B97F4A7C15L; //step of SplittableRandom(seed), its GOLDEN_GAMMA
+
+	private final long seed;
+	private long draws;
+	private final SplittableRandom random;
+
+	public SeededRandom(long seed)
+	{
+		this(seed, 0);
+	}
+	// The generator seeded with seed after draws numbers were drawn from it
+	public SeededRandom(long seed, long draws)
+	{
+		if(draws<0)
+			throw new IllegalArgumentException("draws must not be negative: "+draws);
+		this.seed=seed;
+		this.draws=draws;
+		random = new SplittableRandom(seed+draws*gamma);
+	}
+
+	public double nextDouble()
+	{
+		draws++;
+		return random.nextDouble();
+	}
+	public long nextLong()
+	{
+		draws++;
+		return random.nextLong();
+	}
+
+	public long getSeed()
+	{
+		return seed;
+	}
+	public long getDraws()
+	{
+		return draws;
+	}
+}
@@ -0,0 +1,184 @@
+/* Dijkstra shortest paths over a CSRGraph, where the length of an edge is 1/weight (strong ties are short).
+ *
+ * Used for the community meta-graph: allPairs runs one search per source in parallel, and singleSource serves callers such
+ * as getRingPartition that only need the row of one community. The priority queue is an indexed binary heap on primitive
+ * arrays with decrease-key, so a search allocates nothing beyond its buffers. countPaths also records what Brandes'
+ * betweenness needs: the order vertices were settled in and the number of shortest paths to each. It can stop once a target
+ * is settled, and a search reusing the previous search's arrays only resets the vertices that one touched.
+ */
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+public class ShortestPaths {
+	private int[] heap; //vertices ordered by dist
+	private int[] heapPosition; //position of each vertex in heap, -1 if not queued
+	private int size;
+	private double[] dist;
+	private double[] sigma; //shortest path counts, only filled by countPaths
+	private int[] order;
+	private int settled;
+	private int[] touched; //vertices queued by the last search, in queue order
+	private int numTouched;
+
+	ShortestPaths(int numVertices)
+	{
+		heap = new int[numVertices];
+		heapPosition = new int[numVertices];
+		touched = new int[numVertices];
+	}
+
+	// Distances from source to every vertex, POSITIVE_INFINITY if unreachable. The source's own distance is 0.
+	public static double[] singleSource(CSRGraph graph, int source)
+	{
+		double[] result = new double[graph.getNumVertices()];
+		new ShortestPaths(graph.getNumVertices()).run(graph, source, -1, result);
+		return result;
+	}
+
+	// result[i][j] is the distance from i to j, as singleSource(graph, i)
+	public static double[][] allPairs(CSRGraph graph)
+	{
+		int n = graph.getNumVertices();
+		double[][] result = new double[n][n];
+		ThreadLocal<ShortestPaths> searches = ThreadLocal.withInitial(() -> new ShortestPaths(n));
+		IntStream.range(0, n).parallel().forEach(s -> searches.get().run(graph, s, -1, result[s]));
+		return result;
+	}
+
+	/*	Fills dist as singleSource, sigma with the number of shortest paths from source to each vertex and order with the
+	 * 	settled vertices by non-decreasing distance. Returns the number of vertices settled.
+	 * 	target: the search stops once target is settled, -1 to search the whole component. Only the distances and path
+	 * 	counts of settled vertices are then final.
+	 * 	dist, sigma: when they are the arrays of this object's previous countPaths, only the entries it touched are reset
+	 */
+	int countPaths(CSRGraph graph, int source, int target, double[] dist, double[] sigma, int[] order)
+	{
+		if(sigma==this.sigma&&dist==this.dist)
+		{
+			for(int i=0; i<numTouched; i++)
+			{
+				dist[touched[i]]=Double.POSITIVE_INFINITY;
+				sigma[touched[i]]=0;
+				heapPosition[touched[i]]=-1;
+			}
+		}
+		else
+		{
+			Arrays.fill(dist, Double.POSITIVE_INFINITY);
+			Arrays.fill(sigma, 0);
+			Arrays.fill(heapPosition, -1);
+		}
+		this.sigma=sigma;
+		this.order=order;
+		sigma[source]=1;
+		search(graph, source, target, dist);
+		this.order=null;
+		return settled;
+	}
+
+	private void run(CSRGraph graph, int source, int target, double[] dist)
+	{
+		sigma=null;
+		Arrays.fill(dist, Double.POSITIVE_INFINITY);
+		Arrays.fill(heapPosition, -1);
+		search(graph, source, target, dist);
+	}
+
+	// dist and heapPosition must be reset before
+	private void search(CSRGraph graph, int source, int target, double[] dist)
+	{
+		int[] offsets = graph.getOffsets();
+		int[] targets = graph.getTargets();
+		double[] weights = graph.getWeights();
+		this.dist=dist;
+		size=0;
+		numTouched=0;
+		settled=0;
+		dist[source]=0;
+		push(source);
+		int v;
+		int t;
+		double d;
+		while(size>0)
+		{
+			v=pop();
+			if(order!=null)
+				order[settled]=v;
+			settled++;
+			if(v==target)
+				break;
+			for(int a=offsets[v]; a<offsets[v+1]; a++)
+			{
+				t=targets[a];
+				d=dist[v]+1/weights[a];
+				if(d<dist[t])
+				{
+					dist[t]=d;
+					if(sigma!=null)
+						sigma[t]=sigma[v];
+					if(heapPosition[t]<0)
+						push(t);
+					else
+						siftUp(heapPosition[t]);
+				}
+				else if(sigma!=null&&d==dist[t]&&heapPosition[t]!=-2)
+					sigma[t]+=sigma[v];
+			}
+		}
+	}
+
+	private void push(int v)
+	{
+		touched[numTouched++]=v;
+		heap[size]=v;
+		heapPosition[v]=size;
+		siftUp(size++);
+	}
+	private int pop()
+	{
+		int top = heap[0];
+		heapPosition[top]=-2; //settled
+		size--;
+		if(size>0)
+		{
+			heap[0]=heap[size];
+			heapPosition[heap[0]]=0;
+			siftDown(0);
+		}
+		return top;
+	}
+	private void siftUp(int i)
+	{
+		int v = heap[i];
+		int parent;
+		while(i>0)
+		{
+			parent=(i-1)>>1;
+			if(dist[heap[parent]]<=dist[v])
+				break;
+			heap[i]=heap[parent];
+			heapPosition[heap[i]]=i;
+			i=parent;
+		}
+		heap[i]=v;
+		heapPosition[v]=i;
+	}
+	private void siftDown(int i)
+	{
+		int v = heap[i];
+		int child;
+		while((child=2*i+1)<size)
+		{
+			if(child+1<size&&dist[heap[child+1]]<dist[heap[child]])
+				child++;
+			if(dist[v]<=dist[heap[child]])
+				break;
+			heap[i]=heap[child];
+			heapPosition[heap[i]]=i;
+			i=child;
+		}
+		heap[i]=v;
+		heapPosition[v]=i;
+	}
+}
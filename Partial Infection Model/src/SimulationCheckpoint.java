@@ -0,0 +1,159 @@
+/* Shared pieces of the binary checkpoints written by StaticSimulation and DynamicSimulation.
+ *
+ * A checkpoint is captured into memory on the simulation thread, which only copies the state, and written to disk on a
+ * background thread so the day loop does not wait for the file system. Files are written to a temporary name and then
+ * renamed, so an interrupted write never leaves a truncated checkpoint behind.
+ *
+ * The stochastic models draw from Main.RNG. A checkpoint stores its seed and the number of draws so far without drawing
+ * from it (see SeededRandom), so capturing checkpoints does not change a run, and a restored run continues with exactly
+ * the random numbers the original run used after the checkpoint.
+ *
+ * Layout (big-endian):
+ * 	header: magic, version, kind, numVertices, latentPd, infectiousPd
+ * 	RNG seed, draws
+ * 	simulation fields (see the writeState methods of each simulation)
+ * 	cumulativeData: count, then S, E, I, R per day
+ * 	per vertex: see Vertice.writeState
+ * ResultCache stores the same simulation fields and cumulativeData for a finished run, followed by Vertice.writeResult
+ * of each vertex instead of its full state.
+ */
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class SimulationCheckpoint {
+	static final int magic=0x50494D43; //"PIMC"
+	static final int version=2;
+	static final int staticKind=0;
+	static final int dynamicKind=1;
+
+	private static final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+		Thread t = new Thread(r, "checkpoint writer");
+		t.setDaemon(true);
+		return t;
+	});
+
+	// Writes data to file on the background writer. Checkpoints are written in the order they were captured.
+	public static Future<?> writeAsync(File file, byte[] data)
+	{
+		return writer.submit(() -> {
+			File temp = new File(file.getPath()+".tmp");
+			try
+			{
+				Files.write(temp.toPath(), data);
+				Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch(IOException e)
+			{
+				throw new UncheckedIOException(e);
+			}
+		});
+	}
+
+	public static void writeHeader(DataOutputStream out, int kind, int numVertices, int latentPd, int infectiousPd) throws IOException
+	{
+		out.writeInt(magic);
+		out.writeInt(version);
+		out.writeInt(kind);
+		out.writeInt(numVertices);
+		out.writeInt(latentPd);
+		out.writeInt(infectiousPd);
+	}
+	// Opens file and checks that it was written by a simulation of the same kind, size and periods.
+	public static DataInputStream open(File file, int kind, int numVertices, int latentPd, int infectiousPd) throws IOException
+	{
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1<<16));
+		try
+		{
+			if(in.readInt()!=magic)
+				throw new IOException(file+" is not a simulation checkpoint");
+			int fileVersion = in.readInt();
+			if(fileVersion!=version)
+				throw new IOException(file+" has checkpoint version "+fileVersion+", expected "+version);
+			if(in.readInt()!=kind)
+				throw new IOException(file+" was written by a different kind of simulation");
+			if(in.readInt()!=numVertices||in.readInt()!=latentPd||in.readInt()!=infectiousPd)
+				throw new IOException(file+" does not match this simulation's vertices or periods");
+			return in;
+		}
+		catch(IOException e)
+		{
+			in.close();
+			throw e;
+		}
+	}
+
+	public static void writeData(DataOutputStream out, ArrayList<double[]> cumulativeData) throws IOException
+	{
+		out.writeInt(cumulativeData.size());
+		for(double[] d: cumulativeData)
+			for(int i=0; i<4; i++)
+				out.writeDouble(d[i]);
+	}
+	public static ArrayList<double[]> readData(DataInputStream in) throws IOException
+	{
+		int size = in.readInt();
+		ArrayList<double[]> result = new ArrayList<>(size);
+		double[] d;
+		for(int j=0; j<size; j++)
+		{
+			d = new double[4];
+			for(int i=0; i<4; i++)
+				d[i]=in.readDouble();
+			result.add(d);
+		}
+		return result;
+	}
+
+	// Stores the state of the calling thread's generator, without drawing from it
+	public static void writeRNG(DataOutputStream out) throws IOException
+	{
+		SeededRandom random = Main.RNG.get();
+		out.writeLong(random.getSeed());
+		out.writeLong(random.getDraws());
+	}
+	public static void readRNG(DataInputStream in) throws IOException
+	{
+		long seed = in.readLong();
+		long draws = in.readLong();
+		if(draws<0)
+			throw new IOException("Checkpoint has a negative RNG draw count");
+		Main.RNG.set(new SeededRandom(seed, draws));
+	}
+
+	public static void writeVertices(DataOutputStream out, ArrayList<Vertice> vertices) throws IOException
+	{
+		HashMap<Vertice, Integer> positions = new HashMap<>();
+		for(int i=0; i<vertices.size(); i++)
+			positions.put(vertices.get(i), i);
+		for(Vertice v: vertices)
+			v.writeState(out, positions);
+	}
+	public static void readVertices(DataInputStream in, ArrayList<Vertice> vertices) throws IOException
+	{
+		for(Vertice v: vertices)
+			v.readState(in, vertices);
+	}
+	public static void writeResults(DataOutputStream out, ArrayList<Vertice> vertices) throws IOException
+	{
+		for(Vertice v: vertices)
+			v.writeResult(out);
+	}
+	public static void readResults(DataInputStream in, ArrayList<Vertice> vertices) throws IOException
+	{
+		for(Vertice v: vertices)
+			v.readResult(in);
+	}
+}
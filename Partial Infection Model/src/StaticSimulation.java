@@ -1,12 +1,24 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 
 public class StaticSimulation {
 	private double tProbability; //baseline; is modified by weighting
 	private ArrayList<Vertice> vertices;
-	private Graph G;
+	private Graph G; //null when running on a CompactGraph
+	private CompactGraph compact; //null unless constructed from one
+	private int[] rowTargets; //decoded row of compact
+	private double[] rowWeights;
 	private int day;
 
 	private ArrayList<Vertice> temp;
@@ -23,18 +35,35 @@ public class StaticSimulation {
 	private int infectiousPd;
 
 	ArrayList<double[]> cumulativeData;
-	ArrayList<ArrayList<Double>> individualData; //collects data on the probability of infection of individual vertices over time
+	private TrajectorySink trajectorySink; //receives the probability of infection of individual vertices over time, null to skip
+	private boolean verbose; //prints each day of the deterministic model to console
+	private File checkpointDirectory; //null unless setCheckpoints was called
+	private int checkpointInterval;
+	private Future<?> pendingCheckpoint; //last checkpoint handed to the background writer
+	private ResultCache resultCache; //null unless setResultCache was called
+	private byte[] graphFingerprint;
 
 	public StaticSimulation(Graph G, double tProbability, int latentPd, int infectiousPd)
+	{
+		this(G, null, G.getVertices(), tProbability, latentPd, infectiousPd);
+	}
+	// Runs on a CompactGraph, decoding rows as they are needed instead of keeping Edge objects and weight ranks.
+	// vertices must be in VertexDictionary order, i.e. vertices.get(i) is vertex i of graph.
+	public StaticSimulation(CompactGraph graph, ArrayList<Vertice> vertices, double tProbability, int latentPd, int infectiousPd)
+	{
+		this(null, graph, vertices, tProbability, latentPd, infectiousPd);
+	}
+	private StaticSimulation(Graph G, CompactGraph compact, ArrayList<Vertice> vertices, double tProbability, int latentPd, int infectiousPd)
 	{
 		this.G=G;
+		this.compact=compact;
 		this.tProbability=tProbability;
 		this.latentPd=latentPd;
 		this.infectiousPd=infectiousPd;
 
 		day=0;
 
-		vertices=G.getVertices();
+		this.vertices=vertices;
 		previousTotal=0;
 		currentTotal=0;
 		totalEverInfected=0;
@@ -42,17 +71,163 @@ public class StaticSimulation {
 		peakInfected=0;
 		peakDayInfected=0;
 		weightRanks=new HashMap<>();
-		setWeightRanks();
+		if(compact==null)
+			setWeightRanks();
+		else
+		{
+			if(!VertexDictionary.isIndexed(vertices)||vertices.size()!=compact.getNumVertices())
+				throw new IllegalArgumentException("vertices must be in VertexDictionary order and match the compact graph");
+			rowTargets = new int[compact.getMaxDegree()];
+			rowWeights = new double[compact.getMaxDegree()];
+		}
 		cumulativeData = new ArrayList<>();
-		individualData=new ArrayList<>();
+		trajectorySink=null;
+		verbose=true;
+		checkpointDirectory=null;
+		pendingCheckpoint=null;
+		resultCache=null;
 
 		for(Vertice v: vertices)
 		{
 			v.setProperties(latentPd, infectiousPd);
-			individualData.add(new ArrayList<>());
 		}
 	}
 
+	public void setVerbose(boolean verbose)
+	{
+		this.verbose=verbose;
+	}
+
+	// Writes a checkpoint into directory every interval days of trickleSimul or simul. Pass null to stop.
+	public void setCheckpoints(File directory, int interval)
+	{
+		if(directory!=null&&interval<=0)
+			throw new IllegalArgumentException("Checkpoint interval must be positive: "+interval);
+		checkpointDirectory=directory;
+		checkpointInterval=interval;
+	}
+	// Captures the full simulation state and writes it to file in the background. The returned Future completes once the file is written.
+	public Future<?> checkpoint(File file)
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try(DataOutputStream out = new DataOutputStream(bytes))
+		{
+			SimulationCheckpoint.writeHeader(out, SimulationCheckpoint.staticKind, vertices.size(), latentPd, infectiousPd);
+			SimulationCheckpoint.writeRNG(out);
+			writeState(out);
+		}
+		catch(IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+		pendingCheckpoint = SimulationCheckpoint.writeAsync(file, bytes.toByteArray());
+		return pendingCheckpoint;
+	}
+	// Everything a run depends on except the RNG
+	private void writeState(DataOutputStream out) throws IOException
+	{
+		writeFields(out);
+		SimulationCheckpoint.writeVertices(out, vertices);
+	}
+	private void readState(DataInputStream in) throws IOException
+	{
+		readFields(in);
+		SimulationCheckpoint.readVertices(in, vertices);
+	}
+	private void writeFields(DataOutputStream out) throws IOException
+	{
+		out.writeInt(day);
+		out.writeDouble(totalEverInfected);
+		out.writeDouble(previousTotal);
+		out.writeDouble(currentTotal);
+		out.writeDouble(currentInfected);
+		out.writeDouble(peakInfected);
+		out.writeInt(peakDayInfected);
+		SimulationCheckpoint.writeData(out, cumulativeData);
+	}
+	private void readFields(DataInputStream in) throws IOException
+	{
+		day=in.readInt();
+		totalEverInfected=in.readDouble();
+		previousTotal=in.readDouble();
+		currentTotal=in.readDouble();
+		currentInfected=in.readDouble();
+		peakInfected=in.readDouble();
+		peakDayInfected=in.readInt();
+		cumulativeData=SimulationCheckpoint.readData(in);
+	}
+	// What the result cache stores of a finished run: the fields and the final record of each vertex
+	private byte[] getResult()
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try(DataOutputStream out = new DataOutputStream(bytes))
+		{
+			writeFields(out);
+			SimulationCheckpoint.writeResults(out, vertices);
+		}
+		catch(IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+		return bytes.toByteArray();
+	}
+	private void setResult(byte[] result)
+	{
+		try(DataInputStream in = new DataInputStream(new ByteArrayInputStream(result)))
+		{
+			readFields(in);
+			SimulationCheckpoint.readResults(in, vertices);
+		}
+		catch(IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+	}
+	// Replaces the current state with a checkpoint written by a simulation on the same graph and periods.
+	// Continue the run with continueTrickleSimul or continueSimul.
+	public void restore(File file) throws IOException
+	{
+		try(DataInputStream in = SimulationCheckpoint.open(file, SimulationCheckpoint.staticKind, vertices.size(), latentPd, infectiousPd))
+		{
+			SimulationCheckpoint.readRNG(in);
+			readState(in);
+		}
+	}
+	// Serves repeated deterministic runs on this graph from cache. Pass null to disable.
+	public void setResultCache(ResultCache cache)
+	{
+		resultCache=cache;
+		if(cache==null)
+			graphFingerprint=null;
+		else if(compact==null)
+			graphFingerprint=ResultCache.fingerprint(SimulationCheckpoint.staticKind, new Graph[] {G}, vertices, tProbability, latentPd, infectiousPd);
+		else
+			graphFingerprint=ResultCache.fingerprint(compact, vertices, tProbability, latentPd, infectiousPd);
+	}
+	private void checkpointIfDue()
+	{
+		if(checkpointDirectory!=null&&day%checkpointInterval==0)
+			checkpoint(new File(checkpointDirectory, "day "+day+".checkpoint"));
+	}
+	// Waits for the background writer, so a finished run never leaves a checkpoint half written
+	private void awaitCheckpoint()
+	{
+		if(pendingCheckpoint==null)
+			return;
+		try
+		{
+			pendingCheckpoint.get();
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		catch(ExecutionException e)
+		{
+			throw new IllegalStateException("Checkpoint could not be written", e.getCause());
+		}
+		pendingCheckpoint=null;
+	}
 	public Graph getGraph()
 	{
 		return G;
@@ -87,11 +262,6 @@ public class StaticSimulation {
 		peakInfected=0;
 		peakDayInfected=0;
 		cumulativeData = new ArrayList<>();
-		individualData=new ArrayList<>();
-		for(Vertice v: vertices)
-		{
-			individualData.add(new ArrayList<>());
-		}
 	}
 	public void setInfected(ArrayList<Vertice> input)
 	{
@@ -160,6 +330,14 @@ public class StaticSimulation {
 	}
 	public boolean hasAdjContact(Vertice input)
 	{
+		if(compact!=null)
+		{
+			int degree = compact.decodeRow(input.getIndex(), rowTargets, rowWeights);
+			for(int a=0; a<degree; a++)
+				if(vertices.get(rowTargets[a]).getContactsRemaining(0)>0)
+					return true;
+			return false;
+		}
 		for(Edge e: input.getEdges(0))
 			if(e.getOther(input).getContactsRemaining(0)>0)
 				return true;	
@@ -173,17 +351,34 @@ public class StaticSimulation {
 		ArrayList<Vertice> result = new ArrayList<>();
 		double runningTotal=0;
 		Vertice other;
-		for(Edge e: v.getEdges(0))
+		if(compact==null)
 		{
-			other = e.getOther(v);
-			if(other.hasContactsRemaining(0))
+			for(Edge e: v.getEdges(0))
 			{
-				runningTotal+=e.getWeight();
-				result.add(other);
-				other.searchPlaceholder=runningTotal;
+				other = e.getOther(v);
+				if(other.hasContactsRemaining(0))
+				{
+					runningTotal+=e.getWeight();
+					result.add(other);
+					other.searchPlaceholder=runningTotal;
+				}
 			}
 		}
-		double random = Main.RNG.nextDouble()*runningTotal;
+		else
+		{
+			int degree = compact.decodeRow(v.getIndex(), rowTargets, rowWeights);
+			for(int a=0; a<degree; a++)
+			{
+				other = vertices.get(rowTargets[a]);
+				if(other.hasContactsRemaining(0))
+				{
+					runningTotal+=rowWeights[a];
+					result.add(other);
+					other.searchPlaceholder=runningTotal;
+				}
+			}
+		}
+		double random = Main.RNG.get().nextDouble()*runningTotal;
 		int startIndex=0;
 		int endIndex=result.size()-1;
 		int currentIndex=0;
@@ -215,7 +410,7 @@ public class StaticSimulation {
 		Vertice other;
 		temp = new ArrayList<>(vertices);
 		while (temp.size()>0) {
-			current = temp.get((int)(Main.RNG.nextDouble()*temp.size()));
+			current = temp.get((int)(Main.RNG.get().nextDouble()*temp.size()));
 			other = generateRandContact(current);
 			if (other==null) {
 				temp.remove(current);
@@ -235,6 +430,11 @@ public class StaticSimulation {
 	}
 	
 	public void simul()
+	{
+		continueSimul();
+	}
+	// Continues a Monte Carlo run, e.g. one restored from a checkpoint
+	public void continueSimul()
 	{
 	//	System.out.println("day \t S \t E \t I \t R");
 		while(hasRemaining())
@@ -247,9 +447,11 @@ public class StaticSimulation {
 				peakInfected=cumulativeData.get(day-1)[2];
 				peakDayInfected=day-1;
 			}
+			checkpointIfDue();
 		}
 //	show();
 		cumulativeData.add(new double[] {getNumSusceptible(), getNumExposed(), getNumInfected(), getNumResistant()});
+		awaitCheckpoint();
 	}
 
 	//	Functions for the deterministic version below:
@@ -300,34 +502,27 @@ public class StaticSimulation {
 	public void runTrickleDay()
 	{
 		HashMap<Vertice, Double> tempMap;
-		double altProduct=0;
-		double backflowProduct=1;
+		int degree;
+		double total;
 
 		for(Vertice v:vertices)
 		{
 			if(v.getCumulation()>0)
 			{
-				tempMap = weightRanks.get(v);
-				for(Vertice x: tempMap.keySet())
-				{	
-					altProduct=v.getCumulation();
-					//comment out this bracket to skip backflow correction. Has little effect on outbreak dynamics and is around 5 times slower when not skipped.
-				
-				{	
-					altProduct=v.getProbInfectedFromContacts();
-					for(int i=latentPd-1; i<v.getTracker().length; i++)
-					{
-						altProduct=1-(1-altProduct)/v.getTracker()[i].getPNI(x);
-					}
-					
-					//floating point precision error correction
-					if(altProduct<0)
-						altProduct=0;
-					
-					altProduct*=v.getProbNotRecovered();
+				if(compact==null)
+				{
+					tempMap = weightRanks.get(v);
+					for(Vertice x: tempMap.keySet())
+						trickle(v, x, tempMap.get(x));
 				}
-				
-					x.compoundCumulation(1-Math.pow(1-altProduct*tempMap.get(x),v.getContactsPerDay().get(0)),v);
+				else
+				{
+					degree=compact.decodeRow(v.getIndex(), rowTargets, rowWeights);
+					total=0;
+					for(int a=0; a<degree; a++)
+						total+=rowWeights[a];
+					for(int a=0; a<degree; a++)
+						trickle(v, vertices.get(rowTargets[a]), tProbability*rowWeights[a]/total);
 				}
 			}
 		}
@@ -337,14 +532,57 @@ public class StaticSimulation {
 			v.checkCumulationRecovery(); 
 		}
 	}
+	//spreads v's infection probability to neighbor x. rank is tProb*contactProb for the pair.
+	private void trickle(Vertice v, Vertice x, double rank)
+	{
+		x.compoundCumulation(1-Math.pow(1-getInfectiousness(v, x, latentPd)*rank,v.getContactsPerDay().get(0)),v);
+	}
+	//probability that v is infectious towards x, without the part of v's infection that came from x (backflow correction)
+	static double getInfectiousness(Vertice v, Vertice x, int latentPd)
+	{
+		double altProduct=v.getCumulation();
+		//comment out this bracket to skip backflow correction. Has little effect on outbreak dynamics and is around 5 times slower when not skipped.
+		{
+			altProduct=v.getProbInfectedFromContacts();
+			for(int i=latentPd-1; i<v.getTracker().length; i++)
+			{
+				altProduct=1-(1-altProduct)/v.getTracker()[i].getPNI(x);
+			}
+
+			//floating point precision error correction
+			if(altProduct<0)
+				altProduct=0;
+
+			altProduct*=v.getProbNotRecovered();
+		}
+		return altProduct;
+	}
+	// A run served from the result cache ends with the same totals, data and vertex states, cumulations and probabilities
+	// of not having recovered as a simulated one. Trackers are left empty. Runs with a trajectory sink are always simulated,
+	// since the sink is fed every day.
 	public void trickleSimul()
 	{
+		String key = resultCache==null||trajectorySink!=null ? null : ResultCache.getKey(graphFingerprint, vertices, 0);
+		byte[] cached = key==null ? null : resultCache.get(key);
+		if(cached!=null)
+		{
+			setResult(cached);
+			return;
+		}
 		currentInfected = expectedNumInfected();
 		currentTotal=currentInfected;
+		continueTrickleSimul();
+		if(key!=null)
+			resultCache.put(key, getResult());
+	}
+	// Continues a deterministic run, e.g. one restored from a checkpoint
+	public void continueTrickleSimul()
+	{
 		while(Math.abs(currentTotal-previousTotal)>.5||currentTotal>0.5||day<20)
 		{
 			previousTotal=currentTotal;
-			showTrickle();
+			if(verbose)
+				showTrickle();
 			cumulativeData.add(new double[] {numSusceptible(), expectedNumExposed(), expectedNumInfected(), numRecovered()});
 			addIndividualInfected();
 			runTrickleDay();
@@ -356,10 +594,13 @@ public class StaticSimulation {
 			}
 			currentTotal=currentInfected+expectedNumExposed();
 			totalEverInfected+=currentInfected;
+			checkpointIfDue();
 		}
-		showTrickle();
+		if(verbose)
+			showTrickle();
 		cumulativeData.add(new double[] {numSusceptible(), expectedNumExposed(), expectedNumInfected(), numRecovered()});
 		addIndividualInfected();
+		awaitCheckpoint();
 	}
 	public void showTrickle()
 	{
@@ -409,14 +650,17 @@ public class StaticSimulation {
 	
 	public void addIndividualInfected()
 	{
-		for(int i=0; i<vertices.size(); i++)
-		{
-			individualData.get(i).add(vertices.get(i).getCumulation());
-		}
+		if(trajectorySink!=null)
+			trajectorySink.record(day, vertices);
+	}
+	// e.g. a ColumnarTrajectoryFile to stream every day to disk, or a TrajectoryRing to keep the most recent days in memory
+	public void setTrajectorySink(TrajectorySink sink)
+	{
+		trajectorySink=sink;
 	}
-	public ArrayList<ArrayList<Double>> getIndividualInfected()
+	public TrajectorySink getTrajectorySink()
 	{
-		return individualData;
+		return trajectorySink;
 	}
 	public double numSusceptible()
 	{
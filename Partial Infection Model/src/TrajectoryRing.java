@@ -0,0 +1,67 @@
+/* In-memory TrajectorySink holding only the most recent days, so full per-vertex histories of recent days can be kept on
+ * large graphs without the heap growing with the length of the run.
+ */
+
+import java.util.ArrayList;
+
+public class TrajectoryRing implements TrajectorySink {
+	private float[][] ring; //ring[slot][vertex]
+	private int[] days; //day stored in each slot, -1 if empty
+	private int next;
+
+	public TrajectoryRing(int numVertices, int capacity)
+	{
+		ring = new float[capacity][numVertices];
+		days = new int[capacity];
+		for(int i=0; i<capacity; i++)
+			days[i]=-1;
+		next=0;
+	}
+
+	@Override
+	public void record(int day, ArrayList<Vertice> vertices)
+	{
+		float[] slot = ring[next];
+		for(int i=0; i<vertices.size(); i++)
+			slot[i]=(float)vertices.get(i).getCumulation();
+		days[next]=day;
+		next=(next+1)%ring.length;
+	}
+
+	// values for day, or null if that day is no longer (or was never) held
+	public float[] getDay(int day)
+	{
+		for(int i=0; i<ring.length; i++)
+			if(days[i]==day)
+				return ring[i];
+		return null;
+	}
+	// history of vertex over the held days, oldest first
+	public float[] getVertexHistory(int vertex)
+	{
+		int held=0;
+		for(int d: days)
+			if(d>=0)
+				held++;
+		float[] result = new float[held];
+		int slot;
+		int count=0;
+		for(int i=0; i<ring.length; i++)
+		{
+			slot=(next+i)%ring.length;
+			if(days[slot]>=0)
+				result[count++]=ring[slot][vertex];
+		}
+		return result;
+	}
+	public void clear()
+	{
+		for(int i=0; i<days.length; i++)
+			days[i]=-1;
+		next=0;
+	}
+	@Override
+	public void close()
+	{
+	}
+}
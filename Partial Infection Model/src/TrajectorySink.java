@@ -0,0 +1,11 @@
+/* Receives the per-vertex cumulated probability of infection once per simulated day.
+ * 
+ */
+
+import java.util.ArrayList;
+
+public interface TrajectorySink {
+	// called once per day; vertices are in the same order on every call
+	public void record(int day, ArrayList<Vertice> vertices);
+	public void close();
+}
@@ -0,0 +1,239 @@
+/* Greedy vaccine placement: picks vertices one at a time, each the one whose vaccination lowers the expected outbreak size
+ * the most given the vertices already picked. The expected outbreak size is the deterministic PIM total ever infected
+ * (trickleSimul) averaged over a list of index cases, the figure globalVaccSS/DS and ExperimentRunner report.
+ *
+ * CELF lazy evaluation: vaccinating more vertices can only shrink the gain of vaccinating another one (exactly so when the
+ * objective is submodular, which PIM is close to), so gains from earlier rounds are upper bounds. Each round re-evaluates
+ * the stale vertices at the top of the queue, lazyBatch at a time in parallel, until the best vertex has a fresh gain. Most
+ * vertices are then evaluated in the first round only, instead of k times. The batch size does not depend on the number of
+ * threads and ties go to the earlier candidate, so the placement is the same on any machine.
+ *
+ * The simulations keep their state in the vertices, so every worker materializes its own vertices and graphs from the
+ * snapshot, as the jobs of ExperimentRunner do. There is one worker per processor, kept for the life of the placement and
+ * handed to the parallel tasks explicitly, so pool threads hold no copies once the placement is dropped.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ObjIntConsumer;
+import java.util.stream.IntStream;
+
+public class VaccinePlacement {
+	static final int lazyBatch=16; //stale queue entries re-evaluated at once
+
+	private GraphSnapshot snapshot;
+	private boolean fullGraph;
+	private double T;
+	private int latent;
+	private int infectious;
+	private Worker[] workers; //created when first needed
+	private int[] selected; //positions picked so far, in order
+	private int numSelected;
+	private int placement; //number of place calls, so workers drop the picks of an earlier one
+	private int[] seeds;
+	private ArrayList<Double> expectedInfected;
+
+	/*	Input:
+	 * 	snapshot: graphs to simulate on, G_F if fullGraph is true, else the weekday graphs
+	 * 	T, latent, infectious: parameters of the simulation
+	 */
+	public VaccinePlacement(GraphSnapshot snapshot, boolean fullGraph, double T, int latent, int infectious)
+	{
+		this.snapshot=snapshot;
+		this.fullGraph=fullGraph;
+		this.T=T;
+		this.latent=latent;
+		this.infectious=infectious;
+		workers = new Worker[Runtime.getRuntime().availableProcessors()];
+	}
+
+	// One copy of the simulation state, with the first numApplied picks vaccinated
+	private class Worker
+	{
+		private ArrayList<Vertice> vertices;
+		private StaticSimulation SS;
+		private DynamicSimulation DS;
+		private int numApplied;
+		private int placement;
+
+		Worker()
+		{
+			vertices = snapshot.createVertices(Main.numDayGraphs);
+			if(fullGraph&&Main.useCompactGraph)
+				SS = new StaticSimulation(snapshot.getCompactLayer(0), vertices, T, latent, infectious);
+			else if(fullGraph)
+				SS = new StaticSimulation(snapshot.createGraphs(vertices)[0], T, latent, infectious);
+			if(SS!=null)
+				SS.setVerbose(false);
+			else
+			{
+				DS = new DynamicSimulation(snapshot.createGraphs(vertices), vertices, T, latent, infectious);
+				DS.setVerbose(false);
+			}
+		}
+
+		// Mean total ever infected over the seeds, with the current picks and extra (-1 for none) vaccinated
+		double expectedInfected(int extra)
+		{
+			if(placement!=VaccinePlacement.this.placement)
+			{
+				for(Vertice v: vertices)
+					v.reset();
+				numApplied=0;
+				placement=VaccinePlacement.this.placement;
+			}
+			while(numApplied<numSelected)
+				vaccinate(vertices.get(selected[numApplied++]));
+			if(extra>=0)
+				vaccinate(vertices.get(extra));
+			double total=0;
+			Vertice seed;
+			for(int s: seeds)
+			{
+				seed=vertices.get(s);
+				if(SS!=null)
+				{
+					SS.setTrickler(seed);
+					SS.trickleSimul();
+					total+=SS.getTotalEverInfected();
+					SS.reset(false);
+				}
+				else
+				{
+					DS.setStartDay(seed.getStartingPoint());
+					DS.setTrickler(seed);
+					DS.trickleSimul();
+					total+=DS.getTotalEverInfected();
+					DS.reset(false);
+				}
+				// reset(false) skips vaccinated vertices, so a vaccinated seed is cleaned up here
+				if(seed.getVaccinationState())
+				{
+					seed.reset();
+					vaccinate(seed);
+				}
+			}
+			if(extra>=0)
+				vertices.get(extra).reset();
+			return total/seeds.length;
+		}
+	}
+
+	private Worker getWorker(int w)
+	{
+		if(workers[w]==null)
+			workers[w] = new Worker();
+		return workers[w];
+	}
+	// Runs task for 0 to size-1 in parallel, each worker claiming the next index until none are left
+	private void runParallel(int size, ObjIntConsumer<Worker> task)
+	{
+		AtomicInteger next = new AtomicInteger();
+		IntStream.range(0, Math.min(workers.length, size)).parallel().forEach(w -> {
+			Worker worker = getWorker(w);
+			for(int i=next.getAndIncrement(); i<size; i=next.getAndIncrement())
+				task.accept(worker, i);
+		});
+	}
+
+	private static void vaccinate(Vertice v)
+	{
+		v.setProbNotRecovered(0);
+		v.setVaccinationState(true);
+	}
+
+	/*	Picks up to k vaccine recipients among candidates.
+	 * 	candidates: vertex IDs that may be vaccinated, e.g. the top of a centrality ranking
+	 * 	seeds: vertex IDs used as index cases
+	 * 	Returns the picked IDs, best first. getExpectedInfected gives the objective after each pick.
+	 */
+	public ArrayList<String> place(ArrayList<String> candidates, ArrayList<String> seeds, int k)
+	{
+		ArrayList<Vertice> vertices = getWorker(0).vertices;
+		HashMap<String, Integer> positions = new HashMap<>();
+		for(int i=0; i<vertices.size(); i++)
+			positions.put(vertices.get(i).getID(), i);
+		int[] candidatePositions = toPositions(candidates, positions);
+		this.seeds=toPositions(seeds, positions);
+		selected = new int[Math.min(k, candidatePositions.length)];
+		numSelected=0;
+		placement++;
+		expectedInfected = new ArrayList<>();
+		double current = getWorker(0).expectedInfected(-1);
+		expectedInfected.add(current);
+
+		double[] gain = new double[candidatePositions.length];
+		int[] round = new int[candidatePositions.length]; //pick count when gain was computed
+		PriorityQueue<Integer> queue = new PriorityQueue<>(Math.max(1, candidatePositions.length), new Comparator<Integer>() {
+			@Override
+			public int compare(Integer c1, Integer c2) {
+				if(gain[c1]!=gain[c2])
+					return Double.compare(gain[c2], gain[c1]);
+				return Integer.compare(c1, c2);
+			}
+		});
+		final double base = current;
+		runParallel(candidatePositions.length, (worker, c) -> gain[c]=base-worker.expectedInfected(candidatePositions[c]));
+		for(int c=0; c<candidatePositions.length; c++)
+			queue.add(c);
+
+		int[] batch = new int[lazyBatch];
+		int size;
+		int best;
+		while(numSelected<selected.length&&!queue.isEmpty())
+		{
+			if(round[queue.peek()]==numSelected)
+			{
+				best=queue.poll();
+				selected[numSelected++]=candidatePositions[best];
+				current-=gain[best];
+				expectedInfected.add(current);
+				continue;
+			}
+			size=0;
+			while(size<lazyBatch&&!queue.isEmpty()&&round[queue.peek()]!=numSelected)
+				batch[size++]=queue.poll();
+			final double now = current;
+			runParallel(size, (worker, i) -> {
+				int c = batch[i];
+				gain[c]=now-worker.expectedInfected(candidatePositions[c]);
+				round[c]=numSelected;
+			});
+			for(int i=0; i<size; i++)
+				queue.add(batch[i]);
+		}
+
+		ArrayList<String> result = new ArrayList<>();
+		for(int i=0; i<numSelected; i++)
+			result.add(vertices.get(selected[i]).getID());
+		return result;
+	}
+
+	// Unknown IDs are skipped, repeated IDs are kept once
+	private static int[] toPositions(ArrayList<String> IDs, HashMap<String, Integer> positions)
+	{
+		int[] result = new int[IDs.size()];
+		boolean[] seen = new boolean[positions.size()];
+		int size=0;
+		Integer position;
+		for(String ID: IDs)
+		{
+			position=positions.get(ID);
+			if(position==null||seen[position])
+				continue;
+			seen[position]=true;
+			result[size++]=position;
+		}
+		return Arrays.copyOf(result, size);
+	}
+
+	// Expected total ever infected with none of the picks vaccinated, then after each pick
+	public ArrayList<Double> getExpectedInfected()
+	{
+		return expectedInfected;
+	}
+}
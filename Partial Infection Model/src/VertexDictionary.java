@@ -0,0 +1,75 @@
+/* Interns external vertex IDs (32 character MD5 hex strings in the class-enrollment data) to dense ints at load time.
+ *
+ * Each Vertice created here carries its position as getIndex(), so internal structures can use plain int arrays
+ * indexed by vertex, and the String ID is only looked up again for output.
+ */
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+public class VertexDictionary {
+	private HashMap<String, Integer> indices;
+	private ArrayList<Vertice> vertices;
+
+	public VertexDictionary()
+	{
+		indices = new HashMap<>();
+		vertices = new ArrayList<>();
+	}
+
+	// Returns the vertex for ID, creating it with the next free index if it has not been seen.
+	public Vertice add(String ID, int numWeekdays)
+	{
+		Integer index = indices.get(ID);
+		if(index!=null)
+			return vertices.get(index);
+		Vertice v = new Vertice(ID, vertices.size(), numWeekdays);
+		indices.put(ID, vertices.size());
+		vertices.add(v);
+		return v;
+	}
+	// -1 if ID is unknown
+	public int getIndex(String ID)
+	{
+		Integer index = indices.get(ID);
+		return index==null ? -1 : index;
+	}
+	public Vertice get(int index)
+	{
+		return vertices.get(index);
+	}
+	public Vertice get(String ID)
+	{
+		Integer index = indices.get(ID);
+		return index==null ? null : vertices.get(index);
+	}
+	public String getID(int index)
+	{
+		return vertices.get(index).getID();
+	}
+	public int size()
+	{
+		return vertices.size();
+	}
+	// every vertex in index order
+	public ArrayList<Vertice> getVertices()
+	{
+		return vertices;
+	}
+	public HashMap<String, Vertice> toMap()
+	{
+		HashMap<String, Vertice> result = new HashMap<>();
+		for(Vertice v: vertices)
+			result.put(v.getID(), v);
+		return result;
+	}
+
+	// true if list.get(i).getIndex()==i for every i, i.e. indices can be used as positions in list
+	public static boolean isIndexed(ArrayList<Vertice> list)
+	{
+		for(int i=0; i<list.size(); i++)
+			if(list.get(i).getIndex()!=i)
+				return false;
+		return true;
+	}
+}
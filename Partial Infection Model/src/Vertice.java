@@ -1,7 +1,12 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 
 public class Vertice{
 	private String ID;
+	private int index; //dense position assigned by VertexDictionary, -1 if not interned
 	private ArrayList<ArrayList<Edge>>  edges;
 	private HealthState state;
 	private ArrayList<Double> contactsPerDay;
@@ -37,9 +42,14 @@ public class Vertice{
 		vaccinated
 	}
 	public Vertice(String ID, int numWeekdays)
+	{
+		this(ID, -1, numWeekdays);
+	}
+	public Vertice(String ID, int index, int numWeekdays)
 	{
 		state = HealthState.susceptible;
 		this.ID = ID;
+		this.index = index;
 		edges = new ArrayList<>();
 		for(int i=0; i<numWeekdays; i++)
 			edges.add(new ArrayList<Edge>());
@@ -76,6 +86,10 @@ public class Vertice{
 	{
 		return ID;
 	}
+	public int getIndex()
+	{
+		return index;
+	}
 	public PNITracker[] getTracker()
 	{
 		return trackers;
@@ -193,7 +207,7 @@ public class Vertice{
 		else
 			return false;
 		
-		if(state==HealthState.susceptible&&v.getState()==HealthState.infected&&Main.RNG.nextDouble()<tProbability)
+		if(state==HealthState.susceptible&&v.getState()==HealthState.infected&&Main.RNG.get().nextDouble()<tProbability)
 		{
 			state=HealthState.exposed;
 			daysSinceExposed=0;
@@ -228,7 +242,7 @@ public class Vertice{
 	{
 		for(Edge e: edges.get(day))
 		{
-			if(e.getOther(this).getID()==v.getID())
+			if(e.getOther(this)==v)
 				return true;
 		}
 		return false;
@@ -237,7 +251,7 @@ public class Vertice{
 	{
 		for(Edge e: edges.get(day))
 		{
-			if(e.getOther(this).getID()==v.getID())
+			if(e.getOther(this)==v)
 				return e.getWeight();
 		}
 		return 0;
@@ -255,6 +269,13 @@ public class Vertice{
 		todayTracker.PNI*=(1-d);
 		todayTracker.cL.add(new Contributor(source, 1-d));
 	}
+	//Same as compoundCumulation, but for pressure aggregated over many sources. No contributor is recorded for backflow correction.
+	public void compoundAggregate(double d)
+	{
+		if(d==0)
+			return;
+		todayTracker.PNI*=(1-d);
+	}
 	
 	public void resetTrackerArray()
 	{
@@ -304,4 +325,84 @@ public class Vertice{
 		addNewProbability();
 		todayTracker = new PNITracker();
 	} 
+
+	//Final record of a finished deterministic run, for ResultCache. The trackers are cleared on reading instead of stored,
+	//since nothing reads their contributors once a run has ended.
+	public void writeResult(DataOutputStream out) throws IOException
+	{
+		out.writeByte(state.ordinal());
+		out.writeDouble(cumulatedProbability);
+		out.writeDouble(probNotRecovered);
+		out.writeDouble(probInfectedFromContacts);
+	}
+	public void readResult(DataInputStream in) throws IOException
+	{
+		state=HealthState.values()[in.readByte()];
+		cumulatedProbability=in.readDouble();
+		probNotRecovered=in.readDouble();
+		probInfectedFromContacts=in.readDouble();
+		resetTrackerArray();
+	}
+
+	//Checkpointing. Contributors are stored as positions in the simulation's vertex list.
+	public void writeState(DataOutputStream out, HashMap<Vertice, Integer> positions) throws IOException
+	{
+		out.writeByte(state.ordinal());
+		out.writeInt(daysSinceExposed);
+		out.writeInt(daysSinceInfection);
+		out.writeBoolean(vaccinated);
+		out.writeDouble(cumulatedProbability);
+		out.writeDouble(probNotRecovered);
+		out.writeDouble(probInfectedFromContacts);
+		out.writeInt(remainingContacts==null ? 0 : remainingContacts.length);
+		for(int i=0; remainingContacts!=null&&i<remainingContacts.length; i++)
+			out.writeInt(remainingContacts[i]);
+		out.writeInt(trackers.length);
+		writeTracker(out, todayTracker, positions);
+		for(PNITracker t: trackers)
+			writeTracker(out, t, positions);
+	}
+	private void writeTracker(DataOutputStream out, PNITracker t, HashMap<Vertice, Integer> positions) throws IOException
+	{
+		out.writeDouble(t.PNI);
+		out.writeInt(t.cL.size());
+		Integer position;
+		for(Contributor c: t.cL)
+		{
+			position = positions.get(c.v);
+			if(position==null)
+				throw new IllegalStateException("Contributor "+c.v.getID()+" of "+ID+" is not part of the simulation");
+			out.writeInt(position);
+			out.writeDouble(c.PNI);
+		}
+	}
+	public void readState(DataInputStream in, ArrayList<Vertice> vertices) throws IOException
+	{
+		state=HealthState.values()[in.readByte()];
+		daysSinceExposed=in.readInt();
+		daysSinceInfection=in.readInt();
+		vaccinated=in.readBoolean();
+		cumulatedProbability=in.readDouble();
+		probNotRecovered=in.readDouble();
+		probInfectedFromContacts=in.readDouble();
+		int days = in.readInt();
+		if(days!=(remainingContacts==null ? 0 : remainingContacts.length))
+			throw new IOException("Checkpoint of "+ID+" has "+days+" contact days, expected "+(remainingContacts==null ? 0 : remainingContacts.length));
+		for(int i=0; i<days; i++)
+			remainingContacts[i]=in.readInt();
+		if(in.readInt()!=trackers.length)
+			throw new IOException("Checkpoint of "+ID+" was written with different latent or infectious periods");
+		todayTracker=readTracker(in, vertices);
+		for(int i=0; i<trackers.length; i++)
+			trackers[i]=readTracker(in, vertices);
+	}
+	private PNITracker readTracker(DataInputStream in, ArrayList<Vertice> vertices) throws IOException
+	{
+		double PNI = in.readDouble();
+		int size = in.readInt();
+		ArrayList<Contributor> cL = new ArrayList<>(size);
+		for(int i=0; i<size; i++)
+			cL.add(new Contributor(vertices.get(in.readInt()), in.readDouble()));
+		return new PNITracker(PNI, cL);
+	}
 }
\ No newline at end of file